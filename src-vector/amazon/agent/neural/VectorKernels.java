@@ -0,0 +1,96 @@
+package amazon.agent.neural;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels in SIMD lanes of the platform's preferred vector size, with the
+ * remainder of each loop done one value at a time. Sums are added in a
+ * different order than {@link ScalarKernels}, so results differ by float
+ * rounding.
+ * 
+ * The vector API is an incubator module, so this class is kept in its own
+ * source folder, compiled and run with
+ * {@code --add-modules jdk.incubator.vector}. Networks find it by name, and
+ * use scalar kernels when it is missing or the module isn't available.
+ */
+class VectorKernels implements Kernels {
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.neural.Kernels#dot(float[], float[], int, int)
+	 */
+	@Override
+	public float dot(float[] weights, float[] values, int offset, int length) {
+		FloatVector sum = FloatVector.zero(SPECIES);
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			sum = FloatVector.fromArray(SPECIES, values, offset + i)
+					.fma(FloatVector.fromArray(SPECIES, weights, i), sum);
+		float s = sum.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++)
+			s += values[offset + i] * weights[i];
+		return s;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.neural.Kernels#dot4(float[], float[], int, int, int,
+	 * float[])
+	 */
+	@Override
+	public void dot4(float[] weights, float[] values, int offset, int stride, int length, float[] sums) {
+		int i0 = offset;
+		int i1 = i0 + stride;
+		int i2 = i1 + stride;
+		int i3 = i2 + stride;
+		FloatVector v0 = FloatVector.zero(SPECIES);
+		FloatVector v1 = v0, v2 = v0, v3 = v0;
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			FloatVector weight = FloatVector.fromArray(SPECIES, weights, i);
+			v0 = FloatVector.fromArray(SPECIES, values, i0 + i).fma(weight, v0);
+			v1 = FloatVector.fromArray(SPECIES, values, i1 + i).fma(weight, v1);
+			v2 = FloatVector.fromArray(SPECIES, values, i2 + i).fma(weight, v2);
+			v3 = FloatVector.fromArray(SPECIES, values, i3 + i).fma(weight, v3);
+		}
+		float s0 = v0.reduceLanes(VectorOperators.ADD);
+		float s1 = v1.reduceLanes(VectorOperators.ADD);
+		float s2 = v2.reduceLanes(VectorOperators.ADD);
+		float s3 = v3.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			float weight = weights[i];
+			s0 += values[i0 + i] * weight;
+			s1 += values[i1 + i] * weight;
+			s2 += values[i2 + i] * weight;
+			s3 += values[i3 + i] * weight;
+		}
+		sums[0] = s0;
+		sums[1] = s1;
+		sums[2] = s2;
+		sums[3] = s3;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.neural.Kernels#axpy(float, float[], float[], int)
+	 */
+	@Override
+	public void axpy(float a, float[] x, float[] y, int length) {
+		FloatVector multiple = FloatVector.broadcast(SPECIES, a);
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			FloatVector.fromArray(SPECIES, x, i).fma(multiple, FloatVector.fromArray(SPECIES, y, i)).intoArray(y,
+					i);
+		for (; i < length; i++)
+			y[i] += x[i] * a;
+	}
+}
@@ -0,0 +1,298 @@
+package amazon;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+
+import amazon.agent.CombinedFunction;
+import amazon.agent.EvaluationFunction;
+import amazon.agent.NeuralFunction;
+import amazon.agent.ScoreFunction;
+import amazon.agent.TerritoryFunction;
+import amazon.agent.neural.VanillaNeuralNetwork;
+import amazon.agent.search.AlphaBetaSearch;
+import amazon.board.BoardArray;
+import amazon.board.BoardModel;
+import amazon.board.Move;
+import amazon.board.Perft;
+import amazon.board.PositionSnapshot;
+
+/**
+ * Benchmark suite for the engine hot paths, measured on the stored early,
+ * middle, and late game positions of {@link Perft}. Each benchmark is warmed
+ * up, then run repeatedly for a fixed time, reporting throughput and the
+ * bytes allocated by the benchmark thread per operation and per second.
+ * 
+ * Usage: {@code java amazon.Benchmark [seconds] [filter]}, where seconds is
+ * the measurement time of each benchmark, and only benchmarks whose name
+ * contains the filter are run. Neural network benchmarks use SIMD kernels
+ * when run with {@code --add-modules jdk.incubator.vector} and the
+ * {@code src-vector} folder built.
+ */
+public class Benchmark {
+	/** A benchmarked operation. */
+	private abstract class Case {
+		/** Name of benchmark. */
+		private final String name;
+
+		public Case(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Perform one benchmarked operation.
+		 * 
+		 * @return A value depending on the operation's result, so it can't be
+		 *         optimized away.
+		 */
+		public abstract double run();
+	}
+
+	// Stored positions benchmarked.
+	private static final int[] POSITIONS = { 1, 2, 3 };
+	// Neural network sizes, as used by the game.
+	private static final int INPUT_SIZE = 3001;
+	private static final int HIDDEN_SIZE = 5;
+	private static final int HIDDEN_COUNT = 1;
+	// Number of inputs the neural network calculates at once when batched.
+	private static final int BATCH_SIZE = 16;
+
+	// Board in current position.
+	private BoardModel board;
+	// Packed move buffer.
+	private int[] moves = new int[Move.MAX_MOVES];
+	// Packed move buffer for filtered moves, keeping the full list intact.
+	private int[] buffer = new int[Move.MAX_MOVES];
+	// Possible moves from current position, and index of next one to use.
+	private int moveCount;
+	private int moveIndex;
+	// Board after a move from current position, and the state of the
+	// current position.
+	private BoardModel after;
+	private boolean moveTurn;
+	private byte[][] initialState;
+	// Snapshot of current position, and evaluation of each possible move.
+	private PositionSnapshot initial = new PositionSnapshot();
+	private double[] ranks = new double[Move.MAX_MOVES];
+	// Neural network input of that move, and a training target.
+	private float[] input;
+	private float[] output = { 0.5f };
+	// Batch of copies of that input, and their outputs.
+	private float[] inputs = new float[BATCH_SIZE * INPUT_SIZE];
+	private float[] outputs = new float[BATCH_SIZE];
+	// Neural network and evaluation functions.
+	private VanillaNeuralNetwork nn = new VanillaNeuralNetwork(INPUT_SIZE, HIDDEN_SIZE, HIDDEN_COUNT, 1);
+	private EvaluationFunction score = new ScoreFunction();
+	private EvaluationFunction territory = new TerritoryFunction();
+	private EvaluationFunction neural = new NeuralFunction(nn);
+	// Depth 1 search ranking moves with both evaluation functions, as the
+	// game does.
+	private AlphaBetaSearch search = new AlphaBetaSearch(
+			new CombinedFunction(new EvaluationFunction[] { new NeuralFunction(nn), score }, new double[] { 1, 100 }),
+			1);
+	// Accumulated benchmark results, so no work is optimized away.
+	private double sink;
+
+	// Benchmarked operations.
+	private final Case[] cases = { new Case("possibleMoves") {
+		@Override
+		public double run() {
+			return board.possibleMoves().size();
+		}
+	}, new Case("possibleMovesPacked") {
+		@Override
+		public double run() {
+			return board.possibleMoves(moves);
+		}
+	}, new Case("possibleMovesFiltered") {
+		@Override
+		public double run() {
+			return board.possibleMoves(buffer, true);
+		}
+	}, new Case("getChambers") {
+		@Override
+		public double run() {
+			// Relabel chambers around each possible move in turn.
+			int move = moves[nextMove()];
+			board.move(move);
+			byte[][][] chambers = board.getChambers();
+			board.undo(move);
+			return chambers[0][0][0];
+		}
+	}, new Case("getChambersFromScratch") {
+		@Override
+		public double run() {
+			return new BoardArray(initialState, moveTurn).getChambers()[0][0][0];
+		}
+	}, new Case("clone") {
+		@Override
+		public double run() {
+			return board.clone().getTurn() ? 1 : 0;
+		}
+	}, new Case("getState") {
+		@Override
+		public double run() {
+			return board.getState()[0][0];
+		}
+	}, new Case("statesToFloat") {
+		@Override
+		public double run() {
+			NeuralFunction.statesToFloat(board, after, input, 0);
+			return input[0];
+		}
+	}, new Case("neuralCalc") {
+		@Override
+		public double run() {
+			return nn.calc(input)[0];
+		}
+	}, new Case("neuralCalcBatch" + BATCH_SIZE) {
+		@Override
+		public double run() {
+			nn.calc(inputs, BATCH_SIZE, outputs);
+			return outputs[0];
+		}
+	}, new Case("neuralEFMoves") {
+		@Override
+		public double run() {
+			// Evaluate every possible move one at a time.
+			initial.capture(board);
+			double sum = 0;
+			for (int i = 0; i < moveCount; i++) {
+				board.move(moves[i]);
+				sum += neural.eF(initial, board);
+				board.undo(moves[i]);
+			}
+			return sum;
+		}
+	}, new Case("neuralEFMovesBatch") {
+		@Override
+		public double run() {
+			neural.eF(board, moves, moveCount, ranks);
+			return ranks[0];
+		}
+	}, new Case("neuralTrain") {
+		@Override
+		public double run() {
+			return nn.train(input, output, 0.001);
+		}
+	}, new Case("scoreEF") {
+		@Override
+		public double run() {
+			return score.eF(board, after);
+		}
+	}, new Case("territoryEF") {
+		@Override
+		public double run() {
+			return territory.eF(board, after);
+		}
+	}, new Case("searchDepth1") {
+		@Override
+		public double run() {
+			return search.search(board, Long.MAX_VALUE);
+		}
+	} };
+
+	/**
+	 * Set up benchmark inputs for a stored position.
+	 * 
+	 * @param position
+	 *            Index of stored position.
+	 */
+	private void setUp(int position) {
+		board = new BoardArray(Perft.parse(Perft.POSITIONS[position]), false);
+		moveCount = board.possibleMoves(moves);
+		moveIndex = 0;
+		// Use the first possible move as the evaluated move.
+		moveTurn = board.getTurn();
+		initialState = board.getState();
+		after = board.clone();
+		after.move(moves[0]);
+		input = NeuralFunction.statesToFloat(board, after);
+		for (int b = 0; b < BATCH_SIZE; b++)
+			System.arraycopy(input, 0, inputs, b * INPUT_SIZE, INPUT_SIZE);
+	}
+
+	/** @return Index of the next possible move to use, cycling through all. */
+	private int nextMove() {
+		if (moveIndex >= moveCount)
+			moveIndex = 0;
+		return moveIndex++;
+	}
+
+	/**
+	 * Run a benchmark for at least a given time.
+	 * 
+	 * @param c
+	 *            Benchmark to run.
+	 * @param nanos
+	 *            Time to run for, in nanoseconds.
+	 * @return Operation count, elapsed nanoseconds, and allocated bytes, or
+	 *         -1 bytes if allocation can't be measured.
+	 */
+	private long[] measure(Case c, long nanos) {
+		long operations = 0;
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		long elapsed = 0;
+		// Run in growing batches, so checking the time costs little.
+		for (int batch = 1; elapsed < nanos; batch = Math.min(batch * 2, 1 << 16)) {
+			for (int i = 0; i < batch; i++)
+				sink += c.run();
+			operations += batch;
+			elapsed = System.nanoTime() - start;
+		}
+		long allocated = allocatedBytes();
+		return new long[] { operations, elapsed, bytes < 0 ? -1 : allocated - bytes };
+	}
+
+	/**
+	 * @return Bytes allocated by the current thread so far, or -1 if the
+	 *         virtual machine can't measure it.
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Run every benchmark whose name contains a filter, on every benchmarked
+	 * position, printing one result line each.
+	 * 
+	 * @param seconds
+	 *            Measurement time of each benchmark.
+	 * @param filter
+	 *            Name filter.
+	 */
+	public void run(double seconds, String filter) {
+		ArrayList<Case> selected = new ArrayList<>();
+		for (Case c : cases)
+			if (c.name.contains(filter))
+				selected.add(c);
+		System.out.println("Neural kernels: " + (VanillaNeuralNetwork.isVectorized() ? "vector" : "scalar"));
+		System.out.printf("%-24s %-8s %14s %12s %14s %10s%n", "benchmark", "position", "ops/s", "us/op", "B/op",
+				"MB/s");
+		for (Case c : selected)
+			for (int position : POSITIONS) {
+				setUp(position);
+				// Warm up for a fifth of the measurement time.
+				measure(c, (long) (seconds * 2e8));
+				long[] result = measure(c, (long) (seconds * 1e9));
+				double elapsed = result[1] / 1e9;
+				System.out.printf("%-24s %-8s %,14.1f %,12.3f %,14.0f %,10.1f%n", c.name, Perft.NAMES[position],
+						result[0] / elapsed, elapsed * 1e6 / result[0],
+						result[2] < 0 ? Double.NaN : (double) result[2] / result[0],
+						result[2] < 0 ? Double.NaN : result[2] / elapsed / 1e6);
+			}
+		if (Double.isNaN(sink))
+			System.out.println("Benchmark result was not a number.");
+	}
+
+	/** Run the benchmark suite. */
+	public static void main(String[] args) {
+		double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 1;
+		String filter = args.length > 1 ? args[1] : "";
+		new Benchmark().run(seconds, filter);
+	}
+}
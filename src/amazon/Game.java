@@ -3,18 +3,22 @@ package amazon;
 import java.awt.EventQueue;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import amazon.agent.EvaluationFunction;
+import amazon.agent.EvaluationPipeline;
 import amazon.agent.NeuralFunction;
 import amazon.agent.ScoreFunction;
 import amazon.agent.neural.NeuralNetwork;
 import amazon.agent.neural.VanillaNeuralNetwork;
+import amazon.agent.search.MonteCarloSearch;
+import amazon.agent.search.ParallelSearch;
+import amazon.agent.search.SearchEngine;
+import amazon.agent.search.TranspositionTable;
+import amazon.agent.search.UniformPlayout;
 import amazon.board.BoardArray;
 import amazon.board.BoardModel;
+import amazon.board.Move;
 import amazon.client.ServerClient;
 import amazon.client.SmartFoxClient;
 import amazon.client.SmartFoxLobby;
@@ -36,6 +40,8 @@ public class Game {
 	private BoardView view;
 	// Evaluation function for AI.
 	private EvaluationFunction evalF;
+	// Search engine for AI.
+	private SearchEngine search;
 
 	// Size of neural network hidden layers.
 	int hiddenSize = 5;
@@ -48,11 +54,33 @@ public class Game {
 	boolean train = false;
 	// Use point ratio differential heuristic in addition to neural heuristic.
 	boolean usePointRatioDifferential = true;
+	// Weights of the point ratio differential and neural heuristics.
+	double pointRatioWeight = 100;
+	double neuralWeight = 1;
+	// Most moves of a position the neural heuristic ranks, picked by the
+	// point ratio differential heuristic, and how far below the best a
+	// picked move's weighted rank may be. Below twice the neural weight,
+	// the neural heuristic can't change which move ranks best.
+	int neuralTopK = 16;
+	double neuralMargin = 2 * neuralWeight;
 
 	// Probability of being random instead of determined.
 	double randomProb = 0;
 	// Time limit of each turn.
 	int turnTimeLimit = 25000;
+	// Maximum search depth of each turn, deeper than any game lasts.
+	int maxSearchDepth = 92;
+	// Size of search transposition table in megabytes.
+	int tableSize = 64;
+	// Number of search threads.
+	int searchThreads = Runtime.getRuntime().availableProcessors();
+	// Use Monte Carlo tree search instead of alpha-beta search.
+	boolean useMonteCarlo = false;
+	// Maximum number of Monte Carlo tree nodes.
+	int monteCarloNodes = 1 << 21;
+	// Search on the online opponent's turn, keeping results for the next
+	// turn's search.
+	boolean ponder = true;
 
 	// Time to delay each turn and next game for simulations.
 	int simTurnWait = 00;
@@ -94,8 +122,16 @@ public class Game {
 			}
 		}
 
-		// Create evaluation function from neural network.
+		// Create evaluation function from neural network, run only on moves
+		// the score ratio differential ranks best if used.
 		evalF = new NeuralFunction(nn);
+		if (usePointRatioDifferential)
+			evalF = new EvaluationPipeline(new EvaluationFunction[] { new ScoreFunction(), evalF },
+					new double[] { pointRatioWeight, neuralWeight }, neuralTopK, neuralMargin);
+		if (useMonteCarlo)
+			search = new MonteCarloSearch(new UniformPlayout(), null, monteCarloNodes, searchThreads);
+		else
+			search = new ParallelSearch(evalF, maxSearchDepth, new TranspositionTable(tableSize), searchThreads);
 
 		// Don't create view if training.
 		if (!train)
@@ -143,123 +179,48 @@ public class Game {
 			ArrayList<BoardModel> gameBoardStates = new ArrayList<>();
 			// Max possible number of moves is 92.
 			for (int i = 0; i < 92; i++) {
-				// Wait while it's the other (online) player's turn.
-				if (!simulate)
+				// Wait while it's the other (online) player's turn, pondering
+				// if set to.
+				if (!simulate && board.getTurn() != client.isBlackPlayer()) {
+					Thread ponderThread = ponder ? startPonder(board.clone()) : null;
 					while (board.getTurn() != client.isBlackPlayer()) {
 						try {
 							TimeUnit.MILLISECONDS.sleep(100);
 						} catch (InterruptedException e) {
 						}
 					}
+					if (ponderThread != null)
+						stopPonder(ponderThread);
+				}
 
 				// Get list of possible moves.
-				ArrayList<int[]> possibleMoves = board.possibleMoves();
+				final int[] possibleMoves = new int[Move.MAX_MOVES];
+				final int moveCount = board.possibleMoves(possibleMoves);
 
-				if (possibleMoves.size() > 0) {
-					// List of ranks and indices.
-					CopyOnWriteArrayList<int[]> rankedIndices = new CopyOnWriteArrayList<>();
+				if (moveCount > 0) {
 					// Always random for training.
 					boolean random = train || (simulate && Math.random() < randomProb && !board.getTurn());
-					// Best move index to use, -1 for random.
-					int bestIndex = -1;
+					// Best packed move to use, -1 for random.
+					int bestMove = -1;
 					// Find best move, if not random mode.
 					if (!random) {
-						// Create new thread pool.
-						ExecutorService pool = Executors.newWorkStealingPool();
-
-						// For each depth of search.
-						for (int depth = 0; depth <= possibleMoves.size(); depth++) {
-							final int fDepth = depth;
-							for (int j = 0; j < possibleMoves.size(); j++) {
-								final int fJ = j;
-								// Execute current search in new thread.
-								pool.execute(new Runnable() {
-									@Override
-									public void run() {
-										// Get move parameters.
-										int[] m = possibleMoves.get(fJ);
-										// Clone board, simulate move, and get
-										// resulting state.
-										BoardModel simBoard = board.clone();
-										// Get the states before and after the
-										// simulated move.
-										byte[][] initialState = simBoard.getState();
-										byte[][][] initialChambers = simBoard.getChambers();
-										simBoard.move(m[0], m[1], m[2], m[3], m[4], m[5]);
-										byte[][] finalState = simBoard.getState();
-										byte[][][] finalChambers = simBoard.getChambers();
-										// Evaluate board state with a given
-										// depth.
-										double rank = 0;
-										if (fDepth == 0) {
-											rank = evalF.eF(!simBoard.getTurn(), initialState, initialChambers,
-													finalState, finalChambers);
-											// Score ratio difference.
-											if (usePointRatioDifferential) {
-												double sRank = (new ScoreFunction()).eF(!simBoard.getTurn(),
-														initialState, initialChambers, finalState, finalChambers) * 100;
-												// System.out.println(rank +
-												// "\t" + sRank);
-												rank += sRank;
-											}
-										} else {
-											rank = evalBoard(simBoard, 1, fDepth);
-										}
-										// Change sign for specific player.
-										rank *= board.getTurn() ? 1 : -1;
-										// Check if move is a stupid move, i.e.
-										// queen is
-										// within own chamber.
-										if ((board.getChambers()[1][m[0]][m[1]] == 0
-												&& board.getChambers()[2][m[0]][m[1]] > 0)
-												|| (board.getChambers()[1][m[0]][m[1]] > 0
-														&& board.getChambers()[2][m[0]][m[1]] == 0))
-											rank -= 10000000;
-										// Add rank and index to master list.
-										rankedIndices.add(new int[] { (int) (rank * 1000000), fJ, fDepth });
-									}
-								});
-							}
-
-							// Break if out of time, or max depth.
-							if (board.getTime() >= turnTimeLimit) {
-								break;
-							}
-						}
-
-						// Wait for time limit to finish.
-						while (board.getTime() < turnTimeLimit) {
-							try {
-								TimeUnit.MILLISECONDS.sleep(100);
-							} catch (InterruptedException e) {
-							}
-						}
+						// Search until time limit at most, less time already
+						// taken, returning as soon as deeper search can't
+						// finish in time.
+						long deadline = System.currentTimeMillis() + turnTimeLimit - board.getTime();
+						bestMove = search.search(board, deadline);
 
-						// Shutdown thread pool.
-						pool.shutdownNow();
-
-						if (printMoveSearch)
-							System.out.println("Searched " + rankedIndices.size() + " times from "
-									+ possibleMoves.size() + " moves.");
-						int bestRank = 0;
-						int bestDepth = 0;
-						for (int j = 0; j < rankedIndices.size(); j++)
-							if (rankedIndices.get(j)[0] > bestRank || bestIndex == -1) {
-								bestRank = rankedIndices.get(j)[0];
-								bestIndex = rankedIndices.get(j)[1];
-								bestDepth = rankedIndices.get(j)[2];
-							}
 						if (printMoveSearch)
-							System.out.println("Best move found at " + bestDepth + " depth.");
+							System.out.println(search.getSummary() + " Took " + board.getTime() + " ms.");
 					}
 
-					if (bestIndex == -1)
-						bestIndex = (int) (Math.random() * possibleMoves.size());
+					if (bestMove == -1)
+						bestMove = possibleMoves[(int) (Math.random() * moveCount)];
 
 					// Save state before move.
 					gameBoardStates.add(board.clone());
 					// Get best move parameters.
-					int[] m = possibleMoves.get(bestIndex);
+					int[] m = Move.toArray(bestMove);
 					boolean moveM = move(true, m[0], m[1], m[2], m[3], m[4], m[5]);
 					// Print move information if move was invalid.
 					if (!moveM)
@@ -299,16 +260,10 @@ public class Game {
 					int cycles = (gameBoardStates.size() - 1) * 1000;
 					for (int i = 0; i < cycles; i++) {
 						int j = (int) (Math.random() * (gameBoardStates.size() - 1));
-						// Get parameters from the board state before and after
-						// the given move.
-						boolean moveTurn = gameBoardStates.get(j).getTurn();
-						byte[][] initialState = gameBoardStates.get(j).getState();
-						byte[][][] initialChambers = gameBoardStates.get(j).getChambers();
-						byte[][] finalState = gameBoardStates.get(j + 1).getState();
-						byte[][][] finalChambers = gameBoardStates.get(j + 1).getChambers();
-						// Calculate states to neural network float input.
-						float[] input = NeuralFunction.statesToFloat(moveTurn, initialState, initialChambers,
-								finalState, finalChambers);
+						// Calculate the board positions before and after the
+						// given move to neural network float input.
+						float[] input = NeuralFunction.statesToFloat(gameBoardStates.get(j),
+								gameBoardStates.get(j + 1));
 						error += nn.train(input, output, 0.1) / 2;
 					}
 					error /= cycles;
@@ -339,37 +294,6 @@ public class Game {
 
 	}
 
-	public double evalBoard(BoardModel boardState, int depth, int maxDepth) {
-		// Clone board for simulation.
-		BoardModel simBoard = boardState.clone();
-		// Evaluation rank.
-		double rank = 0;
-		// Get list of possible moves.
-		ArrayList<int[]> possibleMoves = simBoard.possibleMoves();
-		for (int i = 0; i < possibleMoves.size(); i++) {
-			// Get move parameters.
-			int[] m = possibleMoves.get(i);
-			// Get the states before and after the simulated move.
-			byte[][] initialState = simBoard.getState();
-			byte[][][] initialChambers = simBoard.getChambers();
-			simBoard.move(m[0], m[1], m[2], m[3], m[4], m[5]);
-			byte[][] finalState = simBoard.getState();
-			byte[][][] finalChambers = simBoard.getChambers();
-			if (depth >= maxDepth) {
-				rank = evalF.eF(!simBoard.getTurn(), initialState, initialChambers, finalState, finalChambers);
-				if (usePointRatioDifferential) {
-					double sRank = (new ScoreFunction()).eF(!simBoard.getTurn(), initialState, initialChambers,
-							finalState, finalChambers) * 100;
-					rank += sRank;
-				}
-			} else {
-				rank += evalBoard(simBoard, depth + 1, maxDepth);
-			}
-		}
-		rank /= possibleMoves.size();
-		return rank;
-	}
-
 	/**
 	 * Create a new offline game.
 	 * 
@@ -387,6 +311,47 @@ public class Game {
 		this(1, "", "");
 	}
 
+	/**
+	 * Start searching the opponent's position on another thread, until
+	 * stopped. The search's transposition table or tree keeps its results, so
+	 * the search after the opponent's move reuses those for the move played.
+	 * 
+	 * @param ponderBoard
+	 *            Copy of the board on the opponent's turn.
+	 * @return Thread running the search.
+	 */
+	private Thread startPonder(final BoardModel ponderBoard) {
+		Thread ponderThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				search.search(ponderBoard, Long.MAX_VALUE);
+			}
+		}, "ponder");
+		ponderThread.setDaemon(true);
+		ponderThread.start();
+		return ponderThread;
+	}
+
+	/**
+	 * Stop searching the opponent's position, and wait for the search to
+	 * return.
+	 * 
+	 * @param ponderThread
+	 *            Thread running the search.
+	 */
+	private void stopPonder(Thread ponderThread) {
+		// Stop repeatedly, in case the search hadn't started yet.
+		while (ponderThread.isAlive()) {
+			search.stop();
+			try {
+				ponderThread.join(100);
+			} catch (InterruptedException e) {
+			}
+		}
+		if (printMoveSearch)
+			System.out.println("Pondered: " + search.getSummary());
+	}
+
 	/**
 	 * Perform a move.
 	 * 
@@ -0,0 +1,67 @@
+package amazon.agent;
+
+import amazon.board.BoardModel;
+import amazon.board.Position;
+
+/**
+ * Evaluation function combining other evaluation functions as a weighted sum.
+ */
+public class CombinedFunction implements EvaluationFunction {
+	/** Evaluation functions to combine. */
+	private EvaluationFunction[] functions;
+	/** Weight of each evaluation function. */
+	private double[] weights;
+	/** Evaluation buffer of each calling thread. */
+	private final ThreadLocal<double[]> values = new ThreadLocal<double[]>() {
+		@Override
+		protected double[] initialValue() {
+			return new double[0];
+		}
+	};
+
+	/**
+	 * Create a weighted sum of evaluation functions.
+	 * 
+	 * @param functions
+	 *            Evaluation functions to combine.
+	 * @param weights
+	 *            Weight of each evaluation function.
+	 */
+	public CombinedFunction(EvaluationFunction[] functions, double[] weights) {
+		if (functions.length != weights.length)
+			throw new IllegalArgumentException("Function and weight counts differ.");
+		this.functions = functions;
+		this.weights = weights;
+	}
+
+	@Override
+	public double eF(Position initial, Position current) {
+		double rank = 0;
+		for (int i = 0; i < functions.length; i++)
+			rank += functions[i].eF(initial, current) * weights[i];
+		return rank;
+	}
+
+	/**
+	 * Evaluate every given move with each function in turn, so each function
+	 * evaluates them together.
+	 * 
+	 * @see amazon.agent.EvaluationFunction#eF(amazon.board.BoardModel, int[],
+	 *      int, double[])
+	 */
+	@Override
+	public void eF(BoardModel board, int[] moves, int count, double[] ranks) {
+		double[] v = values.get();
+		if (v.length < count) {
+			v = new double[count];
+			values.set(v);
+		}
+		for (int i = 0; i < count; i++)
+			ranks[i] = 0;
+		for (int f = 0; f < functions.length; f++) {
+			functions[f].eF(board, moves, count, v);
+			for (int i = 0; i < count; i++)
+				ranks[i] += v[i] * weights[f];
+		}
+	}
+}
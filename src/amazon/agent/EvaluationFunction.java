@@ -1,5 +1,10 @@
 package amazon.agent;
 
+import amazon.board.ArrayPosition;
+import amazon.board.BoardModel;
+import amazon.board.Position;
+import amazon.board.PositionSnapshot;
+
 /**
  * Evaluation function interface for determining best move given before and
  * after states.
@@ -7,6 +12,49 @@ package amazon.agent;
 public interface EvaluationFunction {
 
 	/**
+	 * Evaluate a move from read-only views of the positions before and after
+	 * it. Views are only read during the call, so a board may be passed as is
+	 * rather than copied.
+	 *
+	 * @param initial
+	 *            Position before move to evaluate, with the moving player's
+	 *            turn.
+	 * @param current
+	 *            Position after move to evaluate.
+	 * @return Evaluation of move from 1 to -1, black to white favor.
+	 */
+	public double eF(Position initial, Position current);
+
+	/**
+	 * Evaluate every given move from a board's position at once, leaving the
+	 * board unchanged. Functions that run faster on many moves together, such
+	 * as a neural network reusing its weights across moves, override this to
+	 * do so, while others evaluate each move in turn.
+	 *
+	 * @param board
+	 *            Board in the position before the moves.
+	 * @param moves
+	 *            Possible packed moves.
+	 * @param count
+	 *            Number of moves.
+	 * @param ranks
+	 *            Array to write the evaluation of each move to, from 1 to -1,
+	 *            black to white favor.
+	 */
+	public default void eF(BoardModel board, int[] moves, int count, double[] ranks) {
+		PositionSnapshot initial = EvaluationScratch.INITIAL.get();
+		initial.capture(board);
+		for (int i = 0; i < count; i++) {
+			board.move(moves[i]);
+			ranks[i] = eF(initial, board);
+			board.undo(moves[i]);
+		}
+	}
+
+	/**
+	 * Evaluate a move from copied board and chamber arrays, viewing them as
+	 * positions.
+	 *
 	 * @param moveTurn
 	 *            Whether black player's turn before move.
 	 * @param initialState
@@ -19,6 +67,9 @@ public interface EvaluationFunction {
 	 *            Chamber state after move to evaluate.
 	 * @return Evaluation of move from 1 to -1, black to white favor.
 	 */
-	public double eF(boolean moveTurn, byte[][] initialState, byte[][][] initialChambers, byte[][] finalState,
-			byte[][][] finalChambers);
+	public default double eF(boolean moveTurn, byte[][] initialState, byte[][][] initialChambers,
+			byte[][] finalState, byte[][][] finalChambers) {
+		return eF(new ArrayPosition(initialState, initialChambers, moveTurn),
+				new ArrayPosition(finalState, finalChambers, !moveTurn));
+	}
 }
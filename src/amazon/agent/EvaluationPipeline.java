@@ -0,0 +1,207 @@
+package amazon.agent;
+
+import amazon.board.BoardModel;
+import amazon.board.Position;
+
+/**
+ * Evaluation function ranking moves in stages of increasing cost, as a
+ * weighted sum of the stages like {@link CombinedFunction}, so a cheap
+ * heuristic such as {@link ScoreFunction} or {@link TerritoryFunction} can
+ * pick the few moves a neural network is worth running on.
+ * 
+ * When all possible moves of a position are ranked at once, the first stage
+ * ranks every move, and each later stage only ranks the moves ranked best so
+ * far: at most a given number of them, and none ranked more than a given
+ * margin below the best. Moves left out of a stage are given the stage's
+ * worst rank among the moves it ranked, so they never overtake a move on its
+ * account. When moves are ranked one at a time, later stages are skipped for
+ * a move ranked more than the margin below a rank already assured.
+ * 
+ * Stage ranks are assumed to be from 1 to -1, so a margin of twice the summed
+ * weight of later stages never changes which move ranks best. Undefined
+ * stage ranks count as even.
+ */
+public class EvaluationPipeline implements EvaluationFunction {
+	/** Evaluation stages, cheapest first. */
+	private EvaluationFunction[] stages;
+	/** Weight of each stage. */
+	private double[] weights;
+	/** Most moves ranked by each stage after the first. */
+	private int topK;
+	/** Furthest below the best rank a move ranked by later stages may be. */
+	private double margin;
+	/** Summed weight magnitude of each stage and all later stages. */
+	private double[] later;
+
+	/** Move and rank buffers of one thread. */
+	private static class Scratch {
+		private boolean[] picked = new boolean[0];
+		private int[] order = new int[0];
+		private int[] moves = new int[0];
+		private double[] values = new double[0];
+	}
+
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	/**
+	 * Create a staged evaluation pipeline.
+	 * 
+	 * @param stages
+	 *            Evaluation stages, cheapest first.
+	 * @param weights
+	 *            Weight of each stage.
+	 * @param topK
+	 *            Most moves of a position ranked by each stage after the
+	 *            first, at least 1.
+	 * @param margin
+	 *            Furthest below the best weighted rank so far a move ranked by
+	 *            a later stage may be, or infinity for no limit.
+	 */
+	public EvaluationPipeline(EvaluationFunction[] stages, double[] weights, int topK, double margin) {
+		if (stages.length == 0)
+			throw new IllegalArgumentException("Pipeline needs at least 1 stage.");
+		if (stages.length != weights.length)
+			throw new IllegalArgumentException("Stage and weight counts differ.");
+		if (topK < 1)
+			throw new IllegalArgumentException("Later stages must rank at least 1 move.");
+		if (!(margin >= 0))
+			throw new IllegalArgumentException("Margin can't be negative.");
+		this.stages = stages;
+		this.weights = weights;
+		this.topK = topK;
+		this.margin = margin;
+		later = new double[stages.length + 1];
+		for (int s = stages.length - 1; s >= 0; s--)
+			later[s] = later[s + 1] + Math.abs(weights[s]);
+	}
+
+	/**
+	 * Rank a single move with every stage.
+	 * 
+	 * @see amazon.agent.EvaluationFunction#eF(amazon.board.Position,
+	 *      amazon.board.Position)
+	 */
+	@Override
+	public double eF(Position initial, Position current) {
+		double rank = 0;
+		for (int s = 0; s < stages.length; s++)
+			rank += stage(s, initial, current);
+		return rank;
+	}
+
+	/**
+	 * Rank a single move in stages, skipping later stages once it ranks more
+	 * than the margin below a rank the moving player is already assured of.
+	 * A move skipping stages is ranked as high as the skipped stages could
+	 * raise it, but no higher than the assured rank.
+	 * 
+	 * @param initial
+	 *            Position before move to evaluate, with the moving player's
+	 *            turn.
+	 * @param current
+	 *            Position after move to evaluate.
+	 * @param assured
+	 *            Rank the moving player is already assured of, from black to
+	 *            white favor, or infinity against the moving player if none.
+	 * @return Weighted rank of move, from black to white favor.
+	 */
+	public double eF(Position initial, Position current, double assured) {
+		double sign = initial.getTurn() ? 1 : -1;
+		double rank = stage(0, initial, current);
+		for (int s = 1; s < stages.length; s++) {
+			if (sign * rank < sign * assured - margin)
+				return sign * Math.min(sign * rank + later[s], sign * assured);
+			rank += stage(s, initial, current);
+		}
+		return rank;
+	}
+
+	/**
+	 * Rank every given move from a board's position in stages, each stage
+	 * ranking its moves together.
+	 * 
+	 * @see amazon.agent.EvaluationFunction#eF(amazon.board.BoardModel, int[],
+	 *      int, double[])
+	 */
+	@Override
+	public void eF(BoardModel board, int[] moves, int count, double[] ranks) {
+		Scratch s = scratch.get();
+		if (s.picked.length < count) {
+			s.picked = new boolean[count];
+			s.order = new int[count];
+			s.moves = new int[count];
+			s.values = new double[count];
+		}
+		// Ranks are compared for the moving player.
+		double sign = board.getTurn() ? 1 : -1;
+		stages[0].eF(board, moves, count, ranks);
+		for (int i = 0; i < count; i++)
+			ranks[i] = weigh(0, ranks[i]);
+		for (int stage = 1; stage < stages.length; stage++) {
+			int picks = pick(ranks, count, sign, s.picked, s.order);
+			for (int k = 0; k < picks; k++)
+				s.moves[k] = moves[s.order[k]];
+			stages[stage].eF(board, s.moves, picks, s.values);
+			double worst = Double.POSITIVE_INFINITY;
+			for (int k = 0; k < picks; k++) {
+				double v = weigh(stage, s.values[k]);
+				ranks[s.order[k]] += v;
+				worst = Math.min(worst, sign * v);
+			}
+			for (int i = 0; i < count; i++)
+				if (!s.picked[i])
+					ranks[i] += sign * worst;
+		}
+	}
+
+	/**
+	 * Pick the moves a later stage ranks: the best ranked, up to the top K
+	 * and within the margin of the best.
+	 * 
+	 * @param ranks
+	 *            Weighted rank of each move so far.
+	 * @param count
+	 *            Number of moves.
+	 * @param sign
+	 *            1 if black is moving, or -1 if white is.
+	 * @param picked
+	 *            Array to flag each picked move in.
+	 * @param order
+	 *            Array to write picked move indices to, best first.
+	 * @return Number of picked moves.
+	 */
+	private int pick(double[] ranks, int count, double sign, boolean[] picked, int[] order) {
+		for (int i = 0; i < count; i++)
+			picked[i] = false;
+		int picks = 0;
+		double limit = Double.NEGATIVE_INFINITY;
+		while (picks < Math.min(topK, count)) {
+			int best = -1;
+			for (int i = 0; i < count; i++)
+				if (!picked[i] && (best == -1 || sign * ranks[i] > sign * ranks[best]))
+					best = i;
+			if (picks == 0)
+				limit = sign * ranks[best] - margin;
+			else if (sign * ranks[best] < limit)
+				break;
+			picked[best] = true;
+			order[picks++] = best;
+		}
+		return picks;
+	}
+
+	/** @return Weighted rank of a stage, with undefined ranks as even. */
+	private double stage(int s, Position initial, Position current) {
+		return weigh(s, stages[s].eF(initial, current));
+	}
+
+	/** @return Weighted rank of a stage's rank, with undefined as even. */
+	private double weigh(int s, double rank) {
+		return Double.isNaN(rank) ? 0 : rank * weights[s];
+	}
+}
@@ -0,0 +1,24 @@
+package amazon.agent;
+
+import amazon.board.PositionSnapshot;
+
+/**
+ * Scratch space of the default methods of {@link EvaluationFunction}, which
+ * can't keep fields of their own.
+ */
+final class EvaluationScratch {
+	/**
+	 * Position before the moves evaluated together, of each thread. Only used
+	 * between capturing it and the last move's evaluation, so an evaluation
+	 * mustn't itself evaluate moves together with the default method.
+	 */
+	static final ThreadLocal<PositionSnapshot> INITIAL = new ThreadLocal<PositionSnapshot>() {
+		@Override
+		protected PositionSnapshot initialValue() {
+			return new PositionSnapshot();
+		}
+	};
+
+	private EvaluationScratch() {
+	}
+}
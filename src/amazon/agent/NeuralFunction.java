@@ -1,97 +1,242 @@
 package amazon.agent;
 
-import java.util.ArrayList;
-
 import amazon.agent.neural.NeuralNetwork;
+import amazon.board.ArrayPosition;
 import amazon.board.BoardModel;
+import amazon.board.Position;
+import amazon.board.PositionSnapshot;
 
 /**
  * Evaluation function utilizing a given neural network.
  */
 public class NeuralFunction implements EvaluationFunction {
+	/** Number of neural inputs for each board location. */
+	private static final int LOCATION_SIZE = 30;
+	/** Most moves calculated by the neural network at once. */
+	private static final int BATCH_SIZE = 16;
+
 	/** Neural network to use. */
 	private NeuralNetwork nn;
 
+	/** Neural input and output buffers of one thread, for up to a batch. */
+	private static class Scratch {
+		private final PositionSnapshot initial = new PositionSnapshot();
+		private float[] inputs = new float[0];
+		private float[] outputs = new float[0];
+	}
+
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
 	public NeuralFunction(NeuralNetwork nn) {
 		this.nn = nn;
 	}
 
 	@Override
-	public double eF(boolean moveTurn, byte[][] initialState, byte[][][] initialChambers, byte[][] finalState,
-			byte[][][] finalChambers) {
+	public double eF(Position initial, Position current) {
 		// Return random if no neural network.
 		if (nn == null) {
 			System.err.println("Warning: Evaluation Function not using neural network!");
 			return Math.random() * 2 - 1;
 		}
-		float[] floats = statesToFloat(moveTurn, initialState, initialChambers, finalState, finalChambers);
-		return nn.calc(floats)[0];
+		// Calculate a batch of one move in the batch buffers.
+		Scratch s = prepare(initial.getRowCount(), initial.getColumnCount());
+		statesToFloat(initial, current, s.inputs, 0);
+		nn.calc(s.inputs, 1, s.outputs);
+		return s.outputs[0];
 	}
 
 	/**
-	 * Convert a single board position value into a float component
-	 * representation.
+	 * Evaluate every given move with the neural network calculating up to
+	 * {@link #BATCH_SIZE} moves at once.
 	 * 
+	 * @see amazon.agent.EvaluationFunction#eF(amazon.board.BoardModel, int[],
+	 *      int, double[])
+	 */
+	@Override
+	public void eF(BoardModel board, int[] moves, int count, double[] ranks) {
+		// Evaluate each move in turn, for random ranks, if no neural network.
+		if (nn == null) {
+			EvaluationFunction.super.eF(board, moves, count, ranks);
+			return;
+		}
+		Scratch s = prepare(board.getRowCount(), board.getColumnCount());
+		int size = inputSize(board.getRowCount(), board.getColumnCount());
+		s.initial.capture(board);
+		for (int first = 0; first < count; first += BATCH_SIZE) {
+			int batch = Math.min(BATCH_SIZE, count - first);
+			// Write each move's input in place in the batch.
+			for (int b = 0; b < batch; b++) {
+				board.move(moves[first + b]);
+				statesToFloat(s.initial, board, s.inputs, b * size);
+				board.undo(moves[first + b]);
+			}
+			nn.calc(s.inputs, batch, s.outputs);
+			for (int b = 0; b < batch; b++)
+				ranks[first + b] = s.outputs[b * nn.getOutputSize()];
+		}
+	}
+
+	/**
+	 * Size the current thread's batch buffers for a board size.
+	 * 
+	 * @param rows
+	 *            Number of board rows.
+	 * @param columns
+	 *            Number of board columns.
+	 * @return Buffers of the current thread.
+	 */
+	private Scratch prepare(int rows, int columns) {
+		Scratch s = scratch.get();
+		int size = inputSize(rows, columns);
+		if (s.inputs.length != BATCH_SIZE * size) {
+			s.inputs = new float[BATCH_SIZE * size];
+			s.outputs = new float[BATCH_SIZE * nn.getOutputSize()];
+		}
+		return s;
+	}
+
+	/**
+	 * @param rows
+	 *            Number of board rows.
+	 * @param columns
+	 *            Number of board columns.
+	 * @return Number of neural inputs for a board size.
+	 */
+	public static int inputSize(int rows, int columns) {
+		return 1 + rows * columns * LOCATION_SIZE;
+	}
+
+	/**
+	 * Convert a single board position value into float components, written
+	 * a given stride apart.
+	 *
 	 * @param b
 	 *            Position value.
-	 * @return Array of float components representing board position value.
+	 * @param output
+	 *            Array to write float components representing board position
+	 *            value to.
+	 * @param offset
+	 *            Index of first component.
+	 * @param stride
+	 *            Index distance between components.
 	 */
-	private static float[] positionToStates(byte b) {
-		float[] output = new float[9];
+	private static void positionToStates(int b, float[] output, int offset, int stride) {
 		// If empty.
-		output[0] = b == BoardModel.E ? 1f : -1f;
+		output[offset] = b == BoardModel.E ? 1f : -1f;
 		// If black queen.
-		output[1] = b == BoardModel.B ? 1f : -1f;
+		output[offset + stride] = b == BoardModel.B ? 1f : -1f;
 		// If white queen.
-		output[2] = b == BoardModel.W ? 1f : -1f;
+		output[offset + 2 * stride] = b == BoardModel.W ? 1f : -1f;
 		// If black arrow.
-		output[3] = b == BoardModel.AB ? 1f : -1f;
+		output[offset + 3 * stride] = b == BoardModel.AB ? 1f : -1f;
 		// If white arrow.
-		output[4] = b == BoardModel.AW ? 1f : -1f;
+		output[offset + 4 * stride] = b == BoardModel.AW ? 1f : -1f;
 		// If an arrow.
-		output[5] = (b == BoardModel.AB || b == BoardModel.AW) ? 1f : -1f;
+		output[offset + 5 * stride] = (b == BoardModel.AB || b == BoardModel.AW) ? 1f : -1f;
 		// If a queen.
-		output[6] = (b == BoardModel.B || b == BoardModel.W) ? 1f : -1f;
+		output[offset + 6 * stride] = (b == BoardModel.B || b == BoardModel.W) ? 1f : -1f;
 		// If a black queen or arrow.
-		output[7] = (b == BoardModel.B || b == BoardModel.AB) ? 1f : -1f;
+		output[offset + 7 * stride] = (b == BoardModel.B || b == BoardModel.AB) ? 1f : -1f;
 		// If a white queen or arrow.
-		output[8] = (b == BoardModel.W || b == BoardModel.AW) ? 1f : -1f;
-		return output;
+		output[offset + 8 * stride] = (b == BoardModel.W || b == BoardModel.AW) ? 1f : -1f;
 	}
 
 	/**
-	 * Convert a single chamber value into a float component representation.
-	 * 
+	 * Convert a single board chamber value into float components, written a
+	 * given stride apart.
+	 *
+	 * @param b
+	 *            Chamber value.
+	 * @param output
+	 *            Array to write float components representing chamber value
+	 *            to.
+	 * @param offset
+	 *            Index of first component.
+	 * @param stride
+	 *            Index distance between components.
+	 */
+	private static void chamberToStates(int b, float[] output, int offset, int stride) {
+		// If -1.
+		output[offset] = b == -1 ? 1f : -1f;
+		// If 0.
+		output[offset + stride] = b == 0 ? 1f : -1f;
+		// If 1.
+		output[offset + 2 * stride] = b == 1 ? 1f : -1f;
+		// If >1.
+		output[offset + 3 * stride] = b > 1 ? 1f : -1f;
+	}
+
+	/**
+	 * Convert a single player chamber value into a float component.
+	 *
 	 * @param b
 	 *            Chamber value.
-	 * @param allChambers
-	 *            For board chambers, unspecific to player.
-	 * @return Array of float components representing chamber value.
+	 * @return Float component representing chamber value.
+	 */
+	private static float playerChamberToState(int b) {
+		// If 0.
+		return b == 0 ? 1f : -1f;
+	}
+
+	/**
+	 * Convert the positions before and after a move into a neural input float
+	 * array.
+	 *
+	 * @param initial
+	 *            Position before move to evaluate.
+	 * @param current
+	 *            Position after move to evaluate.
+	 * @param output
+	 *            Array to write {@link #inputSize(int, int)} floats of neural
+	 *            input to.
+	 * @param first
+	 *            Index of first float to write.
 	 */
-	private static float[] chamberToStates(byte b, boolean allChambers) {
-		float[] output;
-		if (allChambers) {
-			output = new float[4];
-			// If -1.
-			output[0] = b == -1 ? 1f : -1f;
-			// If 0.
-			output[1] = b == 0 ? 1f : -1f;
-			// If 1.
-			output[2] = b == 1 ? 1f : -1f;
-			// If >1.
-			output[3] = b > 1 ? 1f : -1f;
-		} else {
-			output = new float[1];
-			// If 0.
-			output[0] = b == 0 ? 1f : -1f;
+	public static void statesToFloat(Position initial, Position current, float[] output, int first) {
+		// Add move turn value.
+		output[first] = initial.getTurn() ? 1f : -1f;
+		int columns = initial.getColumnCount();
+		// For each spot on the board, interleave values before and after.
+		for (int i = 0; i < initial.getRowCount(); i++) {
+			for (int j = 0; j < columns; j++) {
+				int offset = first + 1 + (i * columns + j) * LOCATION_SIZE;
+				positionToStates(initial.get(i, j), output, offset, 2);
+				positionToStates(current.get(i, j), output, offset + 1, 2);
+				chamberToStates(initial.getChamber(0, i, j), output, offset + 18, 2);
+				chamberToStates(current.getChamber(0, i, j), output, offset + 19, 2);
+				output[offset + 26] = playerChamberToState(initial.getChamber(1, i, j));
+				output[offset + 27] = playerChamberToState(initial.getChamber(2, i, j));
+				output[offset + 28] = playerChamberToState(current.getChamber(1, i, j));
+				output[offset + 29] = playerChamberToState(current.getChamber(2, i, j));
+			}
 		}
+	}
+
+	/**
+	 * Convert the positions before and after a move into a new neural input
+	 * float array.
+	 *
+	 * @param initial
+	 *            Position before move to evaluate.
+	 * @param current
+	 *            Position after move to evaluate.
+	 * @return Neural input float array representation.
+	 */
+	public static float[] statesToFloat(Position initial, Position current) {
+		float[] output = new float[inputSize(initial.getRowCount(), initial.getColumnCount())];
+		statesToFloat(initial, current, output, 0);
 		return output;
 	}
 
 	/**
 	 * Convert the states before and after a move into a neural input float
 	 * array.
-	 * 
+	 *
 	 * @param initialState
 	 *            Board state before move to evaluate.
 	 * @param finalState
@@ -100,40 +245,7 @@ public class NeuralFunction implements EvaluationFunction {
 	 */
 	public static float[] statesToFloat(boolean moveTurn, byte[][] initialState, byte[][][] initialChambers,
 			byte[][] finalState, byte[][][] finalChambers) {
-		// Create list of floats for input.
-		ArrayList<Float> values = new ArrayList<>();
-		// Add move turn value.
-		values.add(moveTurn ? 1f : -1f);
-		// For each spot on the board.
-		for (int i = 0; i < initialState.length; i++) {
-			for (int j = 0; j < initialState[i].length; j++) {
-				float[] vI = positionToStates(initialState[i][j]);
-				float[] vF = positionToStates(finalState[i][j]);
-				float[] cI = chamberToStates(initialChambers[0][i][j], true);
-				float[] cBI = chamberToStates(initialChambers[1][i][j], false);
-				float[] cWI = chamberToStates(initialChambers[2][i][j], false);
-				float[] cF = chamberToStates(finalChambers[0][i][j], true);
-				float[] cBF = chamberToStates(finalChambers[1][i][j], false);
-				float[] cWF = chamberToStates(finalChambers[2][i][j], false);
-				for (int k = 0; k < vI.length; k++) {
-					values.add(vI[k]);
-					values.add(vF[k]);
-				}
-				for (int k = 0; k < cI.length; k++) {
-					values.add(cI[k]);
-					values.add(cF[k]);
-				}
-				for (int k = 0; k < cBI.length; k++) {
-					values.add(cBI[k]);
-					values.add(cWI[k]);
-					values.add(cBF[k]);
-					values.add(cWF[k]);
-				}
-			}
-		}
-		float[] floats = new float[values.size()];
-		for (int i = 0; i < values.size(); i++)
-			floats[i] = values.get(i);
-		return floats;
+		return statesToFloat(new ArrayPosition(initialState, initialChambers, moveTurn),
+				new ArrayPosition(finalState, finalChambers, !moveTurn));
 	}
 }
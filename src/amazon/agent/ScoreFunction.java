@@ -1,43 +1,48 @@
 package amazon.agent;
 
+import amazon.board.Position;
+
 /**
  * Evaluation function based on differential of score ratios before and after
  * move.
  */
 public class ScoreFunction implements EvaluationFunction {
 	@Override
-	public double eF(boolean moveTurn, byte[][] initialState, byte[][][] initialChambers, byte[][] finalState,
-			byte[][][] finalChambers) {
+	public double eF(Position initial, Position current) {
 		// Initial and final, shared and unshared points, for black and white.
-		int[][] pI = new int[2][2];
-		int[][] pF = new int[2][2];
-		for (int i = 0; i < initialChambers[1].length; i++)
-			for (int j = 0; j < initialChambers[1][i].length; j++) {
-				if (initialChambers[1][i][j] > 0) {
-					pI[0][0]++;
-					if (initialChambers[2][i][j] <= 0)
-						pI[1][0]++;
+		int sharedBI = 0, sharedWI = 0, ownBI = 0, ownWI = 0;
+		int sharedBF = 0, sharedWF = 0, ownBF = 0, ownWF = 0;
+		for (int i = 0; i < initial.getRowCount(); i++)
+			for (int j = 0; j < initial.getColumnCount(); j++) {
+				boolean blackI = initial.getChamber(1, i, j) > 0;
+				boolean whiteI = initial.getChamber(2, i, j) > 0;
+				boolean blackF = current.getChamber(1, i, j) > 0;
+				boolean whiteF = current.getChamber(2, i, j) > 0;
+				if (blackI) {
+					sharedBI++;
+					if (!whiteI)
+						ownBI++;
 				}
-				if (initialChambers[2][i][j] > 0) {
-					pI[0][1]++;
-					if (initialChambers[1][i][j] <= 0)
-						pI[1][1]++;
+				if (whiteI) {
+					sharedWI++;
+					if (!blackI)
+						ownWI++;
 				}
-				if (finalChambers[1][i][j] > 0) {
-					pF[0][0]++;
-					if (finalChambers[2][i][j] <= 0)
-						pF[1][0]++;
+				if (blackF) {
+					sharedBF++;
+					if (!whiteF)
+						ownBF++;
 				}
-				if (finalChambers[2][i][j] > 0) {
-					pF[0][1]++;
-					if (finalChambers[1][i][j] <= 0)
-						pF[1][1]++;
+				if (whiteF) {
+					sharedWF++;
+					if (!blackF)
+						ownWF++;
 				}
 			}
-		double ratioI = (double) pI[0][0] / (pI[0][0] + pI[0][1]);
-		ratioI += (double) pI[1][0] / (pI[1][0] + pI[1][1]);
-		double ratioF = (double) pF[0][0] / (pF[0][0] + pF[0][1]);
-		ratioF += (double) pF[1][0] / (pF[1][0] + pF[1][1]);
+		double ratioI = (double) sharedBI / (sharedBI + sharedWI);
+		ratioI += (double) ownBI / (ownBI + ownWI);
+		double ratioF = (double) sharedBF / (sharedBF + sharedWF);
+		ratioF += (double) ownBF / (ownBF + ownWF);
 		return (ratioF - ratioI) / 4;
 	}
 
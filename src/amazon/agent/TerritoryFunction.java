@@ -0,0 +1,184 @@
+package amazon.agent;
+
+import java.util.Arrays;
+
+import amazon.board.BoardModel;
+import amazon.board.Position;
+
+/**
+ * Evaluation function based on territory, from which player's queens reach
+ * each empty location in fewer moves after the move. Distances are found by
+ * breadth first search from all of a player's queens at once, both in queen
+ * moves and in king moves of one location at a time.
+ * 
+ * Each location reached first by queen moves counts as territory, with a
+ * location reached equally fast going slightly to the player to move. Early
+ * on, when many locations are reached about equally fast, territory by king
+ * moves and smooth measures of how much sooner each player reaches locations
+ * count for more. Distance maps are kept in per thread scratch space, so
+ * nothing is allocated after a thread's first call.
+ */
+public class TerritoryFunction implements EvaluationFunction {
+	// Distance of locations a player can't reach.
+	private static final int FAR = Integer.MAX_VALUE;
+	// Territory of a location reached equally fast, for the player to move.
+	private static final double TEMPO = 0.2;
+	// Contested location total at which early game terms are fully weighted.
+	private static final double PHASE_SCALE = 40;
+	// King distance difference at which a location counts fully.
+	private static final double KING_SCALE = 6;
+	// Row and column steps of the eight directions.
+	private static final int[] ROW_STEP = { -1, -1, -1, 0, 0, 1, 1, 1 };
+	private static final int[] COLUMN_STEP = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+	/** Distance maps and search queue of one thread. */
+	private static class Scratch {
+		private int[] queenBlack = new int[0];
+		private int[] queenWhite = new int[0];
+		private int[] kingBlack = new int[0];
+		private int[] kingWhite = new int[0];
+		private int[] queue = new int[0];
+
+		/** Size scratch space for a number of locations. */
+		private void ensure(int squares) {
+			if (queue.length >= squares)
+				return;
+			queenBlack = new int[squares];
+			queenWhite = new int[squares];
+			kingBlack = new int[squares];
+			kingWhite = new int[squares];
+			queue = new int[squares];
+		}
+	}
+
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.EvaluationFunction#eF(amazon.board.Position,
+	 * amazon.board.Position)
+	 */
+	@Override
+	public double eF(Position initial, Position current) {
+		int rows = current.getRowCount();
+		int columns = current.getColumnCount();
+		Scratch s = scratch.get();
+		s.ensure(rows * columns);
+		distances(current, BoardModel.B, true, s.queenBlack, s.queue);
+		distances(current, BoardModel.W, true, s.queenWhite, s.queue);
+		distances(current, BoardModel.B, false, s.kingBlack, s.queue);
+		distances(current, BoardModel.W, false, s.kingWhite, s.queue);
+		// Opponent of the moving player moves next.
+		double tempo = initial.getTurn() ? -TEMPO : TEMPO;
+		// Territory by queen and king moves, smooth queen and king distance
+		// advantages, and how contested locations are, all in black's favor.
+		double t1 = 0;
+		double t2 = 0;
+		double c1 = 0;
+		double c2 = 0;
+		double w = 0;
+		int empty = 0;
+		for (int r = 0; r < rows; r++)
+			for (int c = 0; c < columns; c++) {
+				if (current.get(r, c) != BoardModel.E)
+					continue;
+				empty++;
+				int i = r * columns + c;
+				int qB = s.queenBlack[i];
+				int qW = s.queenWhite[i];
+				int kB = s.kingBlack[i];
+				int kW = s.kingWhite[i];
+				t1 += territory(qB, qW, tempo);
+				t2 += territory(kB, kW, tempo);
+				c1 += 2 * (power(qB) - power(qW));
+				if (kB != FAR || kW != FAR)
+					c2 += kB == FAR ? -1 : kW == FAR ? 1 : Math.max(-1, Math.min(1, (kW - kB) / KING_SCALE));
+				if (qB != FAR && qW != FAR)
+					w += power(Math.abs(qB - qW));
+			}
+		if (empty == 0)
+			return 0;
+		// Weigh early game terms by how contested the board still is.
+		double early = Math.min(1, w / PHASE_SCALE);
+		double rank = (1 - early / 2) * t1 + early / 4 * (t2 + c1 + c2);
+		return rank / empty;
+	}
+
+	/**
+	 * @return Territory of a location for black, from black and white
+	 *         distances to it.
+	 */
+	private static double territory(int black, int white, double tempo) {
+		if (black == white)
+			return black == FAR ? 0 : tempo;
+		return black < white ? 1 : -1;
+	}
+
+	/** @return 2 to the power of a negated distance, or 0 if unreachable. */
+	private static double power(int distance) {
+		return distance == FAR ? 0 : 1.0 / (1 << Math.min(distance, 30));
+	}
+
+	/**
+	 * Find the least number of moves any queen of a player needs to reach each
+	 * location, with breadth first search from all its queens at once.
+	 * 
+	 * @param position
+	 *            Board position.
+	 * @param queen
+	 *            Board value of the player's queens.
+	 * @param queenMoves
+	 *            Whether to count queen moves, or else king moves of one
+	 *            location.
+	 * @param distance
+	 *            Array to write distance of each location index to, or
+	 *            {@link #FAR} if unreachable.
+	 * @param queue
+	 *            Scratch search queue.
+	 */
+	private static void distances(Position position, int queen, boolean queenMoves, int[] distance, int[] queue) {
+		int rows = position.getRowCount();
+		int columns = position.getColumnCount();
+		Arrays.fill(distance, 0, rows * columns, FAR);
+		int head = 0;
+		int tail = 0;
+		for (int r = 0; r < rows; r++)
+			for (int c = 0; c < columns; c++)
+				if (position.get(r, c) == queen) {
+					distance[r * columns + c] = 0;
+					queue[tail++] = r * columns + c;
+				}
+		while (head < tail) {
+			int i = queue[head++];
+			int r = i / columns;
+			int c = i % columns;
+			int next = distance[i] + 1;
+			for (int d = 0; d < 8; d++) {
+				// Slide over empty locations, passing ones reached as fast. Past a
+				// location reached faster, its own slide has reached them all.
+				int rN = r + ROW_STEP[d];
+				int cN = c + COLUMN_STEP[d];
+				while (rN >= 0 && rN < rows && cN >= 0 && cN < columns
+						&& position.get(rN, cN) == BoardModel.E) {
+					int n = rN * columns + cN;
+					if (distance[n] < next)
+						break;
+					if (distance[n] == FAR) {
+						distance[n] = next;
+						queue[tail++] = n;
+					}
+					if (!queenMoves)
+						break;
+					rN += ROW_STEP[d];
+					cN += COLUMN_STEP[d];
+				}
+			}
+		}
+	}
+}
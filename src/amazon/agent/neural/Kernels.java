@@ -0,0 +1,55 @@
+package amazon.agent.neural;
+
+/**
+ * Inner loop kernels of neural network calculation and training, over plain
+ * float arrays. Bias weights are left to the caller, so kernels only loop
+ * over node values.
+ */
+interface Kernels {
+
+	/**
+	 * @param weights
+	 *            Weights, from index 0.
+	 * @param values
+	 *            Node values.
+	 * @param offset
+	 *            Index of first node value.
+	 * @param length
+	 *            Number of weights and node values.
+	 * @return Sum of weighted node values.
+	 */
+	float dot(float[] weights, float[] values, int offset, int length);
+
+	/**
+	 * Sum the weighted node values of four inputs at once, reading each
+	 * weight once for all four.
+	 * 
+	 * @param weights
+	 *            Weights, from index 0.
+	 * @param values
+	 *            Node values of the inputs.
+	 * @param offset
+	 *            Index of first node value of the first input.
+	 * @param stride
+	 *            Index distance between the inputs' first node values.
+	 * @param length
+	 *            Number of weights and node values of each input.
+	 * @param sums
+	 *            Array to write the four sums to.
+	 */
+	void dot4(float[] weights, float[] values, int offset, int stride, int length, float[] sums);
+
+	/**
+	 * Add a multiple of one array to another.
+	 * 
+	 * @param a
+	 *            Multiple.
+	 * @param x
+	 *            Array to add a multiple of.
+	 * @param y
+	 *            Array to add to.
+	 * @param length
+	 *            Number of values, from index 0.
+	 */
+	void axpy(float a, float[] x, float[] y, int length);
+}
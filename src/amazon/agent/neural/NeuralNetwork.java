@@ -11,6 +11,26 @@ public interface NeuralNetwork {
 	 */
 	float[] calc(float[] input);
 
+	/**
+	 * Calculate the outputs of this neural net given a batch of inputs, all
+	 * at once.
+	 * 
+	 * @param inputs
+	 *            Input floating point arrays, one after another.
+	 * @param count
+	 *            Number of inputs.
+	 * @param outputs
+	 *            Floating point array to write the outputs to, one after
+	 *            another.
+	 */
+	void calc(float[] inputs, int count, float[] outputs);
+
+	/** @return The number of input layer nodes. */
+	int getInputSize();
+
+	/** @return The number of output layer nodes. */
+	int getOutputSize();
+
 	/**
 	 * Train this neural net using back propagation, given an input and expected
 	 * output.
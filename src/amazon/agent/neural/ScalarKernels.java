@@ -0,0 +1,57 @@
+package amazon.agent.neural;
+
+/**
+ * Kernels in plain loops, adding in index order.
+ */
+class ScalarKernels implements Kernels {
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.neural.Kernels#dot(float[], float[], int, int)
+	 */
+	@Override
+	public float dot(float[] weights, float[] values, int offset, int length) {
+		float sum = 0;
+		for (int i = 0; i < length; i++)
+			sum += values[offset + i] * weights[i];
+		return sum;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.neural.Kernels#dot4(float[], float[], int, int, int,
+	 * float[])
+	 */
+	@Override
+	public void dot4(float[] weights, float[] values, int offset, int stride, int length, float[] sums) {
+		int i0 = offset;
+		int i1 = i0 + stride;
+		int i2 = i1 + stride;
+		int i3 = i2 + stride;
+		float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		for (int i = 0; i < length; i++) {
+			float weight = weights[i];
+			s0 += values[i0 + i] * weight;
+			s1 += values[i1 + i] * weight;
+			s2 += values[i2 + i] * weight;
+			s3 += values[i3 + i] * weight;
+		}
+		sums[0] = s0;
+		sums[1] = s1;
+		sums[2] = s2;
+		sums[3] = s3;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.neural.Kernels#axpy(float, float[], float[], int)
+	 */
+	@Override
+	public void axpy(float a, float[] x, float[] y, int length) {
+		for (int i = 0; i < length; i++)
+			y[i] += x[i] * a;
+	}
+}
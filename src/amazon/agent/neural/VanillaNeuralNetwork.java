@@ -7,6 +7,36 @@ import java.util.Arrays;
 import java.io.File;
 
 public class VanillaNeuralNetwork implements NeuralNetwork {
+	/**
+	 * Name of the SIMD kernel class, in an optional source folder needing
+	 * {@code --add-modules jdk.incubator.vector} to compile and run.
+	 */
+	private static final String VECTOR_KERNELS = "amazon.agent.neural.VectorKernels";
+	/** Kernels used for calculation and training. */
+	private static final Kernels KERNELS = loadKernels();
+
+	/**
+	 * Load SIMD kernels if available, unless the {@code amazon.neural.scalar}
+	 * system property is set, otherwise scalar kernels.
+	 * 
+	 * @return Kernels to use.
+	 */
+	private static Kernels loadKernels() {
+		if (!Boolean.getBoolean("amazon.neural.scalar"))
+			try {
+				return (Kernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// Class or vector module is missing, fall back to scalar.
+			}
+		return new ScalarKernels();
+	}
+
+	/**
+	 * @return Whether networks calculate and train with SIMD kernels.
+	 */
+	public static boolean isVectorized() {
+		return !(KERNELS instanceof ScalarKernels);
+	}
 
 	public static void main(String[] args) throws IOException {
 		float[] in = { 1f, 2f };
@@ -38,6 +68,21 @@ public class VanillaNeuralNetwork implements NeuralNetwork {
 	 */
 	private ArrayList<Integer> n;
 
+	/** Batch calculation buffers of one thread. */
+	private static class Scratch {
+		// Sums of four inputs at a time.
+		private final float[] sums = new float[4];
+		// Node values of each hidden layer, for every input of the batch.
+		private float[][] layers = new float[0][];
+	}
+
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
 	/**
 	 * Create a new artificial neural network with a given input, hidden, and
 	 * output layer size, hidden layer count, and learning rate.
@@ -218,18 +263,84 @@ public class VanillaNeuralNetwork implements NeuralNetwork {
 			ArrayList<float[]> layerWeights = w.get(lI - 1);
 			// Calculate current layer's node values.
 			for (int nI = 0; nI < currLayer.length; nI++) {
-				// Clear previous node value.
-				currLayer[nI] = 0;
 				float[] nodeWeights = layerWeights.get(nI);
-				// Sum weighted values.
-				for (int wI = 0; wI < nodeWeights.length; wI++) {
-					// Use node value of 1 for bias weight.
-					float backNodeValue = wI < nodeWeights.length - 1 ? backLayer[wI] : 1f;
-					currLayer[nI] += backNodeValue * nodeWeights[wI];
+				// Sum weighted values, then use node value of 1 for bias
+				// weight.
+				float sum = KERNELS.dot(nodeWeights, backLayer, 0, backLayer.length);
+				currLayer[nI] = (float) Math.tanh(sum + nodeWeights[backLayer.length]);
+			}
+		}
+		return n.get(n.size() - 1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.neural.NeuralNetwork#calc(float[], int, float[])
+	 */
+	@Override
+	public void calc(float[] inputs, int count, float[] outputs) {
+		// Check if inputs or outputs are improper size.
+		if (inputs.length < count * n.get(0))
+			throw new IllegalArgumentException("Bad input length.");
+		if (outputs.length < count * n.get(n.size() - 1))
+			throw new IllegalArgumentException("Bad output length.");
+		// Calculate hidden and output layers, for every input of the batch.
+		float[] backLayers = inputs;
+		Scratch s = scratch.get();
+		if (s.layers.length < n.size())
+			s.layers = new float[n.size()][0];
+		float[] sums = s.sums;
+		for (int lI = 1; lI < n.size(); lI++) {
+			int backSize = n.get(lI - 1);
+			int size = n.get(lI);
+			if (lI < n.size() - 1 && s.layers[lI].length < count * size)
+				s.layers[lI] = new float[count * size];
+			float[] currLayers = lI == n.size() - 1 ? outputs : s.layers[lI];
+			// Input layer does not have weights, decrease index by 1.
+			ArrayList<float[]> layerWeights = w.get(lI - 1);
+			for (int nI = 0; nI < size; nI++) {
+				float[] nodeWeights = layerWeights.get(nI);
+				// Use node value of 1 for bias weight.
+				float bias = nodeWeights[backSize];
+				// Sum weighted values of four inputs at a time, reading each
+				// weight once for all four while the node's weights stay
+				// cached across the batch. Each sum adds in the same order
+				// as a single input's.
+				int b = 0;
+				for (; b + 4 <= count; b += 4) {
+					KERNELS.dot4(nodeWeights, backLayers, b * backSize, backSize, backSize, sums);
+					currLayers[b * size + nI] = (float) Math.tanh(sums[0] + bias);
+					currLayers[(b + 1) * size + nI] = (float) Math.tanh(sums[1] + bias);
+					currLayers[(b + 2) * size + nI] = (float) Math.tanh(sums[2] + bias);
+					currLayers[(b + 3) * size + nI] = (float) Math.tanh(sums[3] + bias);
+				}
+				for (; b < count; b++) {
+					float sum = KERNELS.dot(nodeWeights, backLayers, b * backSize, backSize);
+					currLayers[b * size + nI] = (float) Math.tanh(sum + bias);
 				}
-				currLayer[nI] = (float) Math.tanh(currLayer[nI]);
 			}
+			backLayers = currLayers;
 		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.neural.NeuralNetwork#getInputSize()
+	 */
+	@Override
+	public int getInputSize() {
+		return n.get(0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.neural.NeuralNetwork#getOutputSize()
+	 */
+	@Override
+	public int getOutputSize() {
 		return n.get(n.size() - 1);
 	}
 
@@ -274,17 +385,15 @@ public class VanillaNeuralNetwork implements NeuralNetwork {
 				// sigmoid derivative of the node's value, to complete the delta
 				// calculation.
 				forwDelta[fNI] *= 1 - forwLayer[fNI] * forwLayer[fNI];
-				// Sum weighted deltas for current node layer then increment
-				// weights using forward layer deltas.
-				for (int cNI = 0; cNI < currLayer.length + 1; cNI++) {
-					if (cNI < currLayer.length && currDelta != null)
-						currDelta[cNI] += w.get(lI - 1).get(fNI)[cNI] * forwDelta[fNI];
-					// Use node value of 1 for bias weight.
-					float currNodeValue = cNI < currLayer.length ? currLayer[cNI] : 1f;
-					// Adjust weights including bias weight.
-					w.get(lI - 1).get(fNI)[cNI] += currNodeValue * forwDelta[fNI] * learningRate;
-				}
-
+				float[] nodeWeights = w.get(lI - 1).get(fNI);
+				// Sum weighted deltas for current node layer, before
+				// incrementing weights using forward layer deltas.
+				if (currDelta != null)
+					KERNELS.axpy(forwDelta[fNI], nodeWeights, currDelta, currLayer.length);
+				float step = (float) (forwDelta[fNI] * learningRate);
+				KERNELS.axpy(step, currLayer, nodeWeights, currLayer.length);
+				// Use node value of 1 for bias weight.
+				nodeWeights[currLayer.length] += step;
 			}
 		}
 		return Math.pow(error / d.get(nodes.size() - 2).length, 0.5);
@@ -0,0 +1,983 @@
+package amazon.agent.search;
+
+import java.util.Arrays;
+
+import amazon.agent.EvaluationFunction;
+import amazon.agent.EvaluationPipeline;
+import amazon.board.BoardModel;
+import amazon.board.Move;
+import amazon.board.PositionSnapshot;
+
+/**
+ * Negamax search with alpha-beta pruning, deepened iteratively one ply at a
+ * time up to a maximum depth. Moves are performed and undone on a private copy
+ * of the searched board, and moves one ply above the search depth are ranked
+ * by an evaluation function from the states before and after them. Each
+ * iteration searches root moves in order of the previous iteration's scores,
+ * and the best move of the last completed iteration is kept. All root moves
+ * of a single ply iteration are evaluated at once, so the evaluation function
+ * can batch them, such as a staged {@link EvaluationPipeline} only ranking
+ * the most promising with its costly stages. Below the root, a pipeline skips
+ * its costly stages for moves that can't beat a move already searched.
+ * 
+ * Once queens sit in more than one chamber and some chamber still holds
+ * queens of both players, the root position is searched as a sum of games
+ * instead. Each contested chamber is searched on its own as a local game,
+ * moving only its queens, and scored at the horizon by the empty locations
+ * each player's queens reach first. Its results are stored under the
+ * position's key salted with the chamber's locations, apart from whole board
+ * results. Owned chambers are scored by the moves the endgame solver counts
+ * in them. Each contested chamber is searched with either player moving
+ * first, and the difference is its heat. Local games are then summed by a
+ * tempo rule: once the player to move moves in one chamber, or fills an owned
+ * chamber, players alternate moving first in the others, hottest first,
+ * starting with the opponent. Scores of such searches count moves left
+ * rather than ranks.
+ */
+public class AlphaBetaSearch implements SearchEngine {
+	/** Score of a won position, less the ply it's won at. */
+	public static final double WIN = 1e9;
+	// Node count between deadline checks, less 1.
+	private static final int CHECK_MASK = 0xFF;
+	// Assumed growth in time from one iteration to the next, when it can't
+	// be measured, and the least growth assumed when it can.
+	private static final double DEFAULT_GROWTH = 5;
+	private static final double MIN_GROWTH = 2;
+	// Endgame solver states searched in each chamber at the search horizon,
+	// few enough for a solve to fit between deadline checks.
+	private static final int LEAF_SOLVER_NODES = 1 << 10;
+	// Row and column steps of the eight directions.
+	private static final int[] ROW_STEP = { -1, -1, -1, 0, 0, 1, 1, 1 };
+	private static final int[] COLUMN_STEP = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+	// Evaluation function for ranking moves.
+	private EvaluationFunction evalF;
+	// Evaluation function as a staged pipeline, or null if not one.
+	private EvaluationPipeline pipeline;
+	// Maximum search depth in plies.
+	private int depth;
+	// Table of search results, or null if not used, and entry scratch space.
+	private TranspositionTable table;
+	private long[] entry = new long[2];
+	// Move ordering below the root.
+	private MoveOrdering ordering = new MoveOrdering();
+	// Solver of finished games at the root, and at the search horizon.
+	private EndgameSolver solver = new EndgameSolver();
+	private EndgameSolver leafSolver = new EndgameSolver(LEAF_SOLVER_NODES);
+
+	// Board being searched.
+	private BoardModel board;
+	// Packed move buffer of each ply.
+	private int[][] moves = new int[0][];
+	// Position before the moves evaluated at the search horizon.
+	private PositionSnapshot leafParent = new PositionSnapshot();
+	// Ranks of root moves, evaluated together.
+	private double[] rootRanks = new double[Move.MAX_MOVES];
+	// Time to stop searching by.
+	private long deadline;
+	// Whether search ran out of time, or was stopped.
+	private boolean aborted;
+	private volatile boolean stopped;
+	// Index and count of helpers, if a helper of a parallel search.
+	private int helperIndex;
+	private int helperCount;
+	// Whether the current iteration evaluated any move at its depth, rather
+	// than only reaching finished games.
+	private boolean horizon;
+	// Root position, possible moves, and their scores.
+	private PositionSnapshot rootPosition = new PositionSnapshot();
+	private int rootCount;
+	private double[] rootScores = new double[Move.MAX_MOVES];
+	// Whether the root position is searched as a sum of games, the number of
+	// contested chambers, the contested chamber of each location or -1, and
+	// the locations of each contested chamber, from its start index.
+	private boolean decompose;
+	private int regionCount;
+	private int[] regionOf = new int[0];
+	private int[] regionCells = new int[0];
+	private int[] regionStart = new int[0];
+	// Table key salt of each contested chamber, and the chamber searched.
+	private long[] regionSalt = new long[0];
+	private int localRegion;
+	// Score of each contested chamber with the player to move moving first
+	// there and with the opponent moving first, its best root move or -1,
+	// and contested chambers hottest first.
+	private double[] moverFirst = new double[0];
+	private double[] opponentFirst = new double[0];
+	private int[] regionBest = new int[0];
+	private int[] regionOrder = new int[0];
+	// Moves left in owned chambers for the player to move, less the
+	// opponent's, and the solver's move filling them, or -1 if none.
+	private int owned;
+	private int tempoMove;
+	// Best root move of the last sum of games iteration.
+	private int regionMove;
+	// Scratch space for finding chambers: contested chamber of each chamber
+	// label or -1, and whether each label holds black and white queens.
+	private int[] labelRegion = new int[0];
+	private boolean[] hasBlack = new boolean[0];
+	private boolean[] hasWhite = new boolean[0];
+	// Queen moves black and then white need to reach each location, and the
+	// breadth first queue finding them.
+	private int[] distance = new int[0];
+	private int[] queue = new int[0];
+	// Results of the last search.
+	private long nodes;
+	private long probes;
+	private long hits;
+	private double score;
+	private int completedDepth;
+	private int bestMove;
+	// Best root move of the current iteration so far, or -1 if none.
+	private int partialBest;
+
+	/**
+	 * Create a search of a given maximum depth.
+	 * 
+	 * @param evalF
+	 *            Evaluation function for ranking moves, from 1 to -1, black
+	 *            to white favor.
+	 * @param depth
+	 *            Maximum search depth in plies, at least 1.
+	 */
+	public AlphaBetaSearch(EvaluationFunction evalF, int depth) {
+		this(evalF, depth, null);
+	}
+
+	/**
+	 * Create a search of a given maximum depth, storing results in a
+	 * transposition table.
+	 * 
+	 * @param evalF
+	 *            Evaluation function for ranking moves, from 1 to -1, black
+	 *            to white favor.
+	 * @param depth
+	 *            Maximum search depth in plies, at least 1.
+	 * @param table
+	 *            Table of search results, possibly shared with other
+	 *            searches, or null to not store results.
+	 */
+	public AlphaBetaSearch(EvaluationFunction evalF, int depth, TranspositionTable table) {
+		if (depth < 1)
+			throw new IllegalArgumentException("Search depth must be at least 1.");
+		this.evalF = evalF;
+		if (evalF instanceof EvaluationPipeline)
+			pipeline = (EvaluationPipeline) evalF;
+		this.depth = depth;
+		this.table = table;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.search.SearchEngine#search(amazon.board.BoardModel,
+	 * long)
+	 */
+	@Override
+	public int search(BoardModel root, long deadline) {
+		if (table != null)
+			table.newSearch();
+		stopped = false;
+		return run(root, deadline);
+	}
+
+	/**
+	 * Search without starting a new transposition table search, as one of
+	 * several searches sharing the table.
+	 * 
+	 * @param root
+	 *            Board to search from, left unchanged.
+	 * @param deadline
+	 *            Time to stop searching by, in milliseconds.
+	 * @return Best packed move found, or -1 if there are no possible moves.
+	 */
+	int run(BoardModel root, long deadline) {
+		board = root.clone();
+		this.deadline = deadline;
+		aborted = false;
+		nodes = 0;
+		probes = 0;
+		hits = 0;
+		score = -WIN;
+		completedDepth = 0;
+		ordering.newSearch();
+		// Local games search one ply past the depth after a tempo move.
+		if (moves.length < depth + 1)
+			moves = new int[depth + 1][];
+		// Queens in owned chambers can't gain territory, so they aren't
+		// moved while others can.
+		rootCount = board.possibleMoves(moveBuffer(0), true);
+		bestMove = rootCount == 0 ? -1 : moves[0][0];
+		// A single possible move needs no search.
+		if (rootCount <= 1)
+			return bestMove;
+		// Fill chambers with the solver's move once the game is finished and
+		// settled, since search can't see to the end of the filling. A queen
+		// next to an opposing queen may reopen the game, so moves are then
+		// searched.
+		if (solver.solve(board) && solver.isSettled() && solver.getBestMove() != -1) {
+			double v = finishedScore(solver, 0);
+			score = Double.isNaN(v) ? 0 : v;
+			bestMove = solver.getBestMove();
+			return bestMove;
+		}
+		rootPosition.capture(board);
+		findRegions();
+		// Time taken by the previous iteration, in nanoseconds, and the
+		// growth in time of each iteration from the one before.
+		long previousTime = 0;
+		double[] growths = new double[depth + 1];
+		for (int d = 1; d <= depth; d++) {
+			long start = System.nanoTime();
+			// Start helpers on different root moves each iteration, so they
+			// fill the table with different subtrees.
+			if (helperCount > 0)
+				rotate(moves[0], rootCount, (int) ((long) rootCount * helperIndex / (helperCount + 1)));
+			horizon = false;
+			double value = decompose ? searchRegions(d) : searchRoot(d);
+			if (aborted) {
+				// Without any completed iteration, use the best move
+				// searched so far.
+				if (completedDepth == 0 && partialBest != -1) {
+					bestMove = partialBest;
+					score = value;
+				}
+				break;
+			}
+			bestMove = decompose ? regionMove : moves[0][0];
+			score = value;
+			completedDepth = d;
+			// Stop if every line reached a finished game, or a win or loss is
+			// certain, since deeper iterations can't change the result.
+			if (!horizon || Math.abs(value) > WIN / 2)
+				break;
+			// Helpers search until stopped.
+			if (helperCount > 0)
+				continue;
+			// Stop if the next iteration is predicted to run out of time.
+			// Alpha-beta trees grow by about the branching factor into odd
+			// depths, and far less into even ones, so growth is predicted
+			// from the last growth into a depth of the same parity. Growth
+			// into an odd depth that wasn't measured is assumed to be a
+			// quarter of the root moves. Predictions are rough, so the
+			// next iteration must be predicted to take at most half the
+			// time left.
+			long time = System.nanoTime() - start;
+			if (previousTime > 0)
+				growths[d] = Math.max((double) time / previousTime, MIN_GROWTH);
+			double growth = d >= 2 && growths[d - 1] > 0 ? growths[d - 1]
+					: d % 2 == 0 ? Math.max(rootCount / 4.0, DEFAULT_GROWTH) : DEFAULT_GROWTH;
+			if (System.currentTimeMillis() + 2 * time * growth / 1e6 > deadline)
+				break;
+			previousTime = time;
+		}
+		return bestMove;
+	}
+
+	/**
+	 * Search every root move to a given depth, then order root moves by their
+	 * scores, best first. Scores of moves other than the best are only upper
+	 * bounds, but are good enough for ordering.
+	 * 
+	 * @param d
+	 *            Iteration depth in plies.
+	 * @return Score of the best root move, or of the moves searched so far if
+	 *         search ran out of time.
+	 */
+	private double searchRoot(int d) {
+		int[] rootMoves = moves[0];
+		double alpha = Double.NEGATIVE_INFINITY;
+		partialBest = -1;
+		// Rank every root move at once in a single ply iteration.
+		boolean ranked = d == 1;
+		if (ranked)
+			evalF.eF(board, rootMoves, rootCount, rootRanks);
+		for (int i = 0; i < rootCount; i++) {
+			int m = rootMoves[i];
+			board.move(m);
+			double v = d == 1 ? evaluate(0, rootPosition, alpha, ranked ? rootRanks : null, i)
+					: -negamax(1, d - 1, Double.NEGATIVE_INFINITY, -alpha);
+			board.undo(m);
+			// Discard a move whose search was cut short.
+			if (aborted)
+				return alpha;
+			rootScores[i] = v;
+			if (v > alpha) {
+				alpha = v;
+				partialBest = m;
+			}
+		}
+		sortRoot();
+		return alpha;
+	}
+
+	/**
+	 * Order root moves by their scores, best first, keeping earlier moves
+	 * first among equal scores.
+	 */
+	private void sortRoot() {
+		int[] rootMoves = moves[0];
+		for (int i = 1; i < rootCount; i++) {
+			int m = rootMoves[i];
+			double v = rootScores[i];
+			int j = i - 1;
+			for (; j >= 0 && rootScores[j] < v; j--) {
+				rootMoves[j + 1] = rootMoves[j];
+				rootScores[j + 1] = rootScores[j];
+			}
+			rootMoves[j + 1] = m;
+			rootScores[j + 1] = v;
+		}
+	}
+
+	/**
+	 * Search each contested chamber to a given depth as a local game, with
+	 * either player moving first there, then choose the root move whose sum
+	 * of games by the tempo rule is best. Root moves are ordered by their
+	 * local scores, best first within each chamber.
+	 * 
+	 * @param d
+	 *            Iteration depth in plies.
+	 * @return Sum of games score of the best root move, or the best local
+	 *         score so far if search ran out of time.
+	 */
+	private double searchRegions(int d) {
+		int[] rootMoves = moves[0];
+		int columns = board.getColumnCount();
+		double partial = Double.NEGATIVE_INFINITY;
+		partialBest = -1;
+		Arrays.fill(rootScores, 0, rootCount, Double.NEGATIVE_INFINITY);
+		for (int g = 0; g < regionCount; g++) {
+			localRegion = g;
+			double alpha = Double.NEGATIVE_INFINITY;
+			int best = -1;
+			for (int i = 0; i < rootCount; i++) {
+				int m = rootMoves[i];
+				if (regionOf[Move.rQI(m) * columns + Move.cQI(m)] != g)
+					continue;
+				board.move(m);
+				double v = -localNegamax(1, d - 1, Double.NEGATIVE_INFINITY, -alpha);
+				board.undo(m);
+				if (aborted)
+					return partial;
+				rootScores[i] = v;
+				if (v > alpha) {
+					alpha = v;
+					best = m;
+				}
+			}
+			if (best != -1 && alpha > partial) {
+				partial = alpha;
+				partialBest = best;
+			}
+			// The opponent moves first here once the player to move fills an
+			// owned chamber, or else moves in another contested one.
+			int tempo = tempoMove;
+			for (int i = 0; tempo == -1 && i < rootCount; i++)
+				if (regionOf[Move.rQI(rootMoves[i]) * columns + Move.cQI(rootMoves[i])] != g)
+					tempo = rootMoves[i];
+			if (tempo != -1) {
+				board.move(tempo);
+				opponentFirst[g] = -localNegamax(1, d, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+				board.undo(tempo);
+				if (aborted)
+					return partial;
+			} else
+				opponentFirst[g] = alpha;
+			moverFirst[g] = best == -1 ? opponentFirst[g] : alpha;
+			regionBest[g] = best;
+		}
+		sortRoot();
+		// Order contested chambers by heat, hottest first.
+		for (int g = 0; g < regionCount; g++) {
+			double heat = moverFirst[g] - opponentFirst[g];
+			int j = g - 1;
+			for (; j >= 0 && moverFirst[regionOrder[j]] - opponentFirst[regionOrder[j]] < heat; j--)
+				regionOrder[j + 1] = regionOrder[j];
+			regionOrder[j + 1] = g;
+		}
+		double alpha = Double.NEGATIVE_INFINITY;
+		regionMove = -1;
+		for (int g = 0; g < regionCount; g++) {
+			if (regionBest[g] == -1)
+				continue;
+			double v = moverFirst[g] + sumRegions(g) + owned;
+			if (v > alpha) {
+				alpha = v;
+				regionMove = regionBest[g];
+			}
+		}
+		// Filling an owned chamber spends one of its moves.
+		if (tempoMove != -1 && sumRegions(-1) + owned - 1 > alpha) {
+			alpha = sumRegions(-1) + owned - 1;
+			regionMove = tempoMove;
+		}
+		// Root moves only in owned chambers, which the solver couldn't fill.
+		if (regionMove == -1)
+			regionMove = rootMoves[0];
+		partialBest = regionMove;
+		return alpha;
+	}
+
+	/**
+	 * Sum the scores of contested chambers by the tempo rule, with players
+	 * alternately moving first in them hottest first, starting with the
+	 * opponent.
+	 * 
+	 * @param skip
+	 *            Contested chamber the player to move moved in, or -1 if none.
+	 * @return Sum of scores of the other contested chambers, for the player
+	 *         to move at the root.
+	 */
+	private double sumRegions(int skip) {
+		double sum = 0;
+		int k = 0;
+		for (int i = 0; i < regionCount; i++) {
+			int g = regionOrder[i];
+			if (g != skip)
+				sum += k++ % 2 == 0 ? opponentFirst[g] : moverFirst[g];
+		}
+		return sum;
+	}
+
+	/**
+	 * Search a position with negamax and alpha-beta pruning.
+	 * 
+	 * @param ply
+	 *            Plies from the root.
+	 * @param remaining
+	 *            Plies left to search, at least 1.
+	 * @param alpha
+	 *            Score the player to move is already assured of.
+	 * @param beta
+	 *            Score the opponent is already assured of, negated.
+	 * @return Score for the player to move, or 0 if search ran out of time.
+	 */
+	private double negamax(int ply, int remaining, double alpha, double beta) {
+		if (checkTime())
+			return 0;
+		// Use a stored result if deep enough and its bound allows, or else
+		// its best move.
+		long key = board.hash();
+		int hashMove = -1;
+		if (table != null) {
+			probes++;
+			if (table.probe(key, entry)) {
+				hits++;
+				hashMove = TranspositionTable.move(entry);
+				if (TranspositionTable.depth(entry) >= remaining) {
+					double v = fromTable(TranspositionTable.score(entry), ply);
+					int bound = TranspositionTable.bound(entry);
+					if (bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER && v >= beta)
+							|| (bound == TranspositionTable.UPPER && v <= alpha)) {
+						// Result may have come from the horizon.
+						if (Math.abs(v) < WIN / 2)
+							horizon = true;
+						return v;
+					}
+				}
+			}
+		}
+		int[] plyMoves = moveBuffer(ply);
+		int count = board.possibleMoves(plyMoves, true);
+		// A player unable to move loses.
+		if (count == 0)
+			return -WIN + ply;
+		// Search stored best move first, then likely cutoff moves.
+		ordering.score(board, plyMoves, count, ply, hashMove);
+		if (remaining == 1)
+			leafParent.capture(board);
+		double best = Double.NEGATIVE_INFINITY;
+		int nodeMove = -1;
+		for (int i = 0; i < count; i++) {
+			int m = ordering.pick(plyMoves, count, ply, i);
+			board.move(m);
+			double v = remaining == 1 ? evaluate(ply, leafParent, Math.max(alpha, best), null, 0)
+					: -negamax(ply + 1, remaining - 1, -beta, -Math.max(alpha, best));
+			board.undo(m);
+			if (aborted)
+				return 0;
+			if (v > best) {
+				best = v;
+				nodeMove = m;
+				if (best >= beta) {
+					ordering.cutoff(m, ply, remaining);
+					break;
+				}
+			}
+		}
+		if (table != null) {
+			int bound = best <= alpha ? TranspositionTable.UPPER
+					: best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			table.store(key, toTable(best, ply), nodeMove, remaining, bound);
+		}
+		return best;
+	}
+
+	/**
+	 * Search the local game of the contested chamber being searched with
+	 * negamax and alpha-beta pruning, moving only queens in the chamber.
+	 * 
+	 * @param ply
+	 *            Plies from the root.
+	 * @param remaining
+	 *            Plies left to search.
+	 * @param alpha
+	 *            Score the player to move is already assured of.
+	 * @param beta
+	 *            Score the opponent is already assured of, negated.
+	 * @return Local score for the player to move, or 0 if search ran out of
+	 *         time.
+	 */
+	private double localNegamax(int ply, int remaining, double alpha, double beta) {
+		if (checkTime())
+			return 0;
+		if (remaining == 0) {
+			horizon = true;
+			return territory();
+		}
+		// Salt the key, so local results of the chamber are kept apart from
+		// whole board results and other chambers' results.
+		long key = board.hash() ^ regionSalt[localRegion];
+		int hashMove = -1;
+		if (table != null) {
+			probes++;
+			if (table.probe(key, entry)) {
+				hits++;
+				hashMove = TranspositionTable.move(entry);
+				if (TranspositionTable.depth(entry) >= remaining) {
+					double v = TranspositionTable.score(entry);
+					int bound = TranspositionTable.bound(entry);
+					if (bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER && v >= beta)
+							|| (bound == TranspositionTable.UPPER && v <= alpha)) {
+						horizon = true;
+						return v;
+					}
+				}
+			}
+		}
+		int[] plyMoves = moveBuffer(ply);
+		int count = board.possibleMoves(plyMoves, true);
+		int columns = board.getColumnCount();
+		int local = 0;
+		for (int i = 0; i < count; i++) {
+			int m = plyMoves[i];
+			if (regionOf[Move.rQI(m) * columns + Move.cQI(m)] == localRegion)
+				plyMoves[local++] = m;
+		}
+		// A player unable to move in the chamber leaves the rest of it to the
+		// opponent.
+		if (local == 0)
+			return territory();
+		ordering.score(board, plyMoves, local, ply, hashMove);
+		double best = Double.NEGATIVE_INFINITY;
+		int nodeMove = -1;
+		for (int i = 0; i < local; i++) {
+			int m = ordering.pick(plyMoves, local, ply, i);
+			board.move(m);
+			double v = -localNegamax(ply + 1, remaining - 1, -beta, -Math.max(alpha, best));
+			board.undo(m);
+			if (aborted)
+				return 0;
+			if (v > best) {
+				best = v;
+				nodeMove = m;
+				if (best >= beta) {
+					ordering.cutoff(m, ply, remaining);
+					break;
+				}
+			}
+		}
+		if (table != null) {
+			int bound = best <= alpha ? TranspositionTable.UPPER
+					: best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+			table.store(key, best, nodeMove, remaining, bound);
+		}
+		return best;
+	}
+
+	/**
+	 * Score the contested chamber being searched by the empty locations each
+	 * player's queens reach in fewer queen moves than the opponent's.
+	 * 
+	 * @return Locations the player to move reaches first, less those the
+	 *         opponent reaches first.
+	 */
+	private double territory() {
+		int squares = board.getRowCount() * board.getColumnCount();
+		int start = regionStart[localRegion];
+		int end = regionStart[localRegion + 1];
+		for (int k = start; k < end; k++) {
+			distance[regionCells[k]] = Integer.MAX_VALUE;
+			distance[squares + regionCells[k]] = Integer.MAX_VALUE;
+		}
+		reach(BoardModel.B, 0);
+		reach(BoardModel.W, squares);
+		int columns = board.getColumnCount();
+		int sum = 0;
+		for (int k = start; k < end; k++) {
+			int s = regionCells[k];
+			if (board.get(s / columns, s % columns) != BoardModel.E)
+				continue;
+			if (distance[s] < distance[squares + s])
+				sum++;
+			else if (distance[squares + s] < distance[s])
+				sum--;
+		}
+		return board.getTurn() ? sum : -sum;
+	}
+
+	/**
+	 * Find the fewest queen moves a player's queens need to reach each
+	 * location of the contested chamber being searched, breadth first. Arrows
+	 * only ever close chambers, so queens never leave it.
+	 * 
+	 * @param queen
+	 *            Board value of the player's queens.
+	 * @param offset
+	 *            Index of the player's distance to location 0.
+	 */
+	private void reach(int queen, int offset) {
+		int rows = board.getRowCount();
+		int columns = board.getColumnCount();
+		int tail = 0;
+		for (int k = regionStart[localRegion]; k < regionStart[localRegion + 1]; k++) {
+			int s = regionCells[k];
+			if (board.get(s / columns, s % columns) == queen) {
+				distance[offset + s] = 0;
+				queue[tail++] = s;
+			}
+		}
+		for (int head = 0; head < tail; head++) {
+			int s = queue[head];
+			int next = distance[offset + s] + 1;
+			for (int d = 0; d < 8; d++) {
+				int r = s / columns + ROW_STEP[d];
+				int c = s % columns + COLUMN_STEP[d];
+				while (r >= 0 && r < rows && c >= 0 && c < columns && board.get(r, c) == BoardModel.E) {
+					int t = r * columns + c;
+					if (distance[offset + t] > next) {
+						distance[offset + t] = next;
+						queue[tail++] = t;
+					}
+					r += ROW_STEP[d];
+					c += COLUMN_STEP[d];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Split the root position into chambers, and decide whether to search it
+	 * as a sum of games. If so, find the locations of each contested chamber
+	 * and their key salt, and solve the moves left in owned chambers.
+	 */
+	private void findRegions() {
+		int rows = board.getRowCount();
+		int columns = board.getColumnCount();
+		int squares = rows * columns;
+		if (regionOf.length < squares) {
+			regionOf = new int[squares];
+			regionCells = new int[squares];
+			regionStart = new int[squares + 1];
+			regionSalt = new long[squares];
+			moverFirst = new double[squares];
+			opponentFirst = new double[squares];
+			regionBest = new int[squares];
+			regionOrder = new int[squares];
+			labelRegion = new int[squares + 1];
+			hasBlack = new boolean[squares + 1];
+			hasWhite = new boolean[squares + 1];
+			distance = new int[2 * squares];
+			queue = new int[squares];
+		}
+		Arrays.fill(hasBlack, false);
+		Arrays.fill(hasWhite, false);
+		for (int s = 0; s < squares; s++) {
+			int label = board.getChamber(0, s / columns, s % columns);
+			regionOf[s] = label;
+			int value = board.get(s / columns, s % columns);
+			if (value == BoardModel.B)
+				hasBlack[label] = true;
+			else if (value == BoardModel.W)
+				hasWhite[label] = true;
+		}
+		int queenChambers = 0;
+		regionCount = 0;
+		for (int label = 1; label <= squares; label++) {
+			if (hasBlack[label] || hasWhite[label])
+				queenChambers++;
+			labelRegion[label] = hasBlack[label] && hasWhite[label] ? regionCount++ : -1;
+		}
+		// A single chamber is searched as a whole.
+		decompose = regionCount > 0 && queenChambers > 1;
+		if (!decompose)
+			return;
+		for (int s = 0; s < squares; s++)
+			regionOf[s] = regionOf[s] == 0 ? -1 : labelRegion[regionOf[s]];
+		int n = 0;
+		for (int g = 0; g < regionCount; g++) {
+			regionStart[g] = n;
+			long salt = 0;
+			for (int s = 0; s < squares; s++)
+				if (regionOf[s] == g) {
+					regionCells[n++] = s;
+					salt = mix(salt ^ (s + 1));
+				}
+			regionSalt[g] = salt | 1;
+		}
+		regionStart[regionCount] = n;
+		solver.solveOwned(board);
+		boolean black = board.getTurn();
+		owned = solver.getLower(black) - solver.getLower(!black);
+		tempoMove = solver.getBestMove();
+	}
+
+	/** @return Value mixed by the SplitMix64 finalizer. */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @return Packed move buffer of a given ply, created on first use.
+	 */
+	private int[] moveBuffer(int ply) {
+		if (moves[ply] == null)
+			moves[ply] = new int[Move.MAX_MOVES];
+		return moves[ply];
+	}
+
+	/**
+	 * Rotate the first moves of a list to the left.
+	 * 
+	 * @param list
+	 *            Packed move list.
+	 * @param count
+	 *            Number of moves in list.
+	 * @param offset
+	 *            Number of places to rotate by.
+	 */
+	private static void rotate(int[] list, int count, int offset) {
+		if (offset <= 0)
+			return;
+		int[] head = Arrays.copyOf(list, offset);
+		System.arraycopy(list, offset, list, 0, count - offset);
+		System.arraycopy(head, 0, list, count - offset, offset);
+	}
+
+	/**
+	 * Convert a score to be stored, making win and loss scores relative to the
+	 * stored position rather than the root.
+	 */
+	private static double toTable(double v, int ply) {
+		if (v > WIN / 2)
+			return v + ply;
+		if (v < -WIN / 2)
+			return v - ply;
+		return v;
+	}
+
+	/** Convert a stored score back, relative to the root. */
+	private static double fromTable(double v, int ply) {
+		if (v > WIN / 2)
+			return v - ply;
+		if (v < -WIN / 2)
+			return v + ply;
+		return v;
+	}
+
+	/**
+	 * Evaluate the move just performed on the board.
+	 * 
+	 * @param ply
+	 *            Plies from the root before the move.
+	 * @param initial
+	 *            Position before the move.
+	 * @param assured
+	 *            Score the player who performed the move is already assured
+	 *            of, for skipping costly stages of a staged evaluation.
+	 * @param moveRanks
+	 *            Ranks of the moves from the position before the move,
+	 *            already evaluated together, or null to evaluate the move.
+	 * @param index
+	 *            Index of the move's rank.
+	 * @return Score for the player who performed the move.
+	 */
+	private double evaluate(int ply, PositionSnapshot initial, double assured, double[] moveRanks, int index) {
+		boolean black = initial.getTurn();
+		if (checkTime())
+			return 0;
+		// Opponent unable to move loses.
+		if (!board.hasMoves(!black))
+			return WIN - (ply + 1);
+		// Score a finished game by the moves each player has left, if the
+		// solver can tell who runs out first.
+		if (leafSolver.solve(board)) {
+			double v = finishedScore(leafSolver, ply + 1);
+			if (!Double.isNaN(v))
+				return -v;
+		}
+		horizon = true;
+		double rank;
+		if (moveRanks != null)
+			rank = moveRanks[index];
+		else if (pipeline != null)
+			rank = pipeline.eF(initial, board, black ? assured : -assured);
+		else
+			rank = evalF.eF(initial, board);
+		// Treat undefined ranks, such as from boards without points, as even.
+		if (Double.isNaN(rank))
+			rank = 0;
+		return black ? rank : -rank;
+	}
+
+	/**
+	 * Score a finished game from the solver's moves left, with the player who
+	 * runs out of moves first losing.
+	 * 
+	 * @param solver
+	 *            Solver that solved the board's position.
+	 * @param ply
+	 *            Plies from the root of the board's position.
+	 * @return Score for the player to move, or NaN if the solver's bounds
+	 *         don't tell the winner, or may not hold.
+	 */
+	private double finishedScore(EndgameSolver solver, int ply) {
+		if (!solver.isSettled())
+			return Double.NaN;
+		boolean black = board.getTurn();
+		int most = solver.getUpper(black);
+		int opponentMost = solver.getUpper(!black);
+		// The player to move runs out first unless it has more moves left.
+		if (most <= solver.getLower(!black))
+			return -WIN + ply + 2 * most;
+		if (solver.getLower(black) > opponentMost)
+			return WIN - (ply + 2 * opponentMost + 1);
+		return Double.NaN;
+	}
+
+	/**
+	 * Count a visited position, checking time periodically.
+	 * 
+	 * @return Whether search ran out of time.
+	 */
+	private boolean checkTime() {
+		if ((++nodes & CHECK_MASK) == 0 && (stopped || System.currentTimeMillis() >= deadline))
+			aborted = true;
+		return aborted;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.search.SearchEngine#stop()
+	 */
+	@Override
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Make this search a helper of a parallel search, which starts on
+	 * different root moves than the main search, and deepens until stopped.
+	 * 
+	 * @param index
+	 *            Index of helper, from 1.
+	 * @param count
+	 *            Number of helpers.
+	 */
+	void setHelper(int index, int count) {
+		helperIndex = index;
+		helperCount = count;
+	}
+
+	/** Clear any stop request before a new search. */
+	void clearStop() {
+		stopped = false;
+	}
+
+	/** @return Maximum search depth in plies. */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @param depth
+	 *            Maximum search depth in plies, at least 1.
+	 */
+	public void setDepth(int depth) {
+		if (depth < 1)
+			throw new IllegalArgumentException("Search depth must be at least 1.");
+		this.depth = depth;
+	}
+
+	/**
+	 * @return Whether the last search ran out of time during an iteration,
+	 *         rather than stopping between iterations.
+	 */
+	public boolean isAborted() {
+		return aborted;
+	}
+
+	/** @return Best packed move of the last search, or -1 if none. */
+	public int getBestMove() {
+		return bestMove;
+	}
+
+	/** @return Depth of the last search's last completed iteration. */
+	public int getCompletedDepth() {
+		return completedDepth;
+	}
+
+	/** @return Number of positions visited by the last search. */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return Fraction of the last search's transposition table lookups that
+	 *         found a stored result, or 0 if none.
+	 */
+	public double getHitRate() {
+		return probes == 0 ? 0 : (double) hits / probes;
+	}
+
+	/** @return Number of the last search's transposition table lookups. */
+	long getProbes() {
+		return probes;
+	}
+
+	/** @return Number of those lookups that found a stored result. */
+	long getHits() {
+		return hits;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.search.SearchEngine#getSummary()
+	 */
+	@Override
+	public String getSummary() {
+		String summary = "Searched " + nodes + " positions to " + completedDepth + " depth.";
+		if (table != null)
+			summary += String.format(" Table hit %.1f%% of lookups, %.1f%% full.", getHitRate() * 100,
+					table.fill() * 100);
+		return summary;
+	}
+
+	/** @return Transposition table used, or null if none. */
+	public TranspositionTable getTable() {
+		return table;
+	}
+
+	/**
+	 * @return Score of the last search's best move, for the player who moves
+	 *         it, counting moves left if searched as a sum of games.
+	 */
+	public double getScore() {
+		return score;
+	}
+}
@@ -0,0 +1,494 @@
+package amazon.agent.search;
+
+import java.util.Arrays;
+
+import amazon.board.BoardModel;
+import amazon.board.Move;
+
+/**
+ * Solver of finished games, where no chamber holds queens of both players, so
+ * the winner is whoever can make more moves in their own chambers. That isn't
+ * simply chamber size, since queens can wall themselves off from parts of a
+ * chamber, so each chamber is filled separately, with the other player's
+ * queens taken as walls. A greedy fill gives a lower
+ * bound on its moves, and the empty locations an upper bound. When they
+ * differ, chambers of up to 64 locations are searched exactly, depth first
+ * over bitmasks of their empty locations and queens, with searched states
+ * memoized. Chambers too large or slow to search keep their bounds.
+ * 
+ * A queen next to an opposing queen reopens the game by moving away, letting
+ * the opposing queens into its chamber, so a solve with such queens isn't
+ * settled: its moves are counted as if the queens stayed walls, so bounds
+ * aren't sure to hold and are never exact. Moves of other queens are
+ * preferred for the best move. The best move is the best
+ * first move of one of the player's chambers, preferring such queens, then
+ * the chamber with the least difference between its bounds, whose first move
+ * is surest not to lose any moves.
+ * 
+ * A solver keeps scratch space and results of the last solve, so each search
+ * thread needs its own.
+ */
+public class EndgameSolver {
+	// Default number of states searched in each chamber before giving up.
+	private static final int DEFAULT_NODE_LIMIT = 1 << 16;
+	// Number of memo entries, a power of two.
+	private static final int MEMO_SIZE = 1 << 16;
+	// Greedy fill penalty of moving a queen next to an opposing queen, above
+	// any other score.
+	private static final int GUARD_PENALTY = 128;
+	// Row and column steps of the eight directions.
+	private static final int[] ROW_STEP = { -1, -1, -1, 0, 0, 1, 1, 1 };
+	private static final int[] COLUMN_STEP = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+	// States searched in each chamber before giving up.
+	private final int nodeLimit;
+	// Memo of searched chamber states, by empty location and queen masks,
+	// with moves left plus 1, and the stamp of the chamber searched.
+	private final long[] memoEmpty = new long[MEMO_SIZE];
+	private final long[] memoQueens = new long[MEMO_SIZE];
+	private final int[] memoMoves = new int[MEMO_SIZE];
+	private final int[] memoStamp = new int[MEMO_SIZE];
+	private int stamp;
+	// States searched in the current chamber, and whether the limit was hit.
+	private int nodes;
+	private boolean exhausted;
+
+	// Board dimensions of the last solve.
+	private int rows;
+	private int columns;
+	// Board locations of the current chamber, and whether each board
+	// location was already found in a chamber.
+	private int[] locations = new int[0];
+	private boolean[] found = new boolean[0];
+	// Local index of each board location in the current chamber, or -1.
+	private int[] localOf = new int[0];
+	// Local index of the next location in each direction from each local
+	// location, or -1 if it leaves the chamber, eight slots per location.
+	private int[] next = new int[0];
+	// Greedy fill scratch: whether each local location is empty, and local
+	// queen locations.
+	private boolean[] open = new boolean[0];
+	private int[] queens = new int[0];
+	// Whether each local location is next to an opposing queen, and the mask
+	// of those locations.
+	private boolean[] guard = new boolean[0];
+	private long guardMask;
+	// Local queen, final queen, and arrow locations of the best first move
+	// found in the current chamber.
+	private int bestQ;
+	private int bestT;
+	private int bestA;
+	// Difference between the bounds of the last chamber solved, and whether
+	// its best first move is of a queen next to an opposing queen.
+	private int slack;
+	private boolean guarded;
+
+	// Results of the last solve: lower and upper bounds of moves left for
+	// black and white, whether bounds are exact, whether no queen is next to
+	// an opposing queen, and the best move for the player to move.
+	private final int[] lower = new int[2];
+	private final int[] upper = new int[2];
+	private boolean exact;
+	private boolean settled;
+	private int bestMove;
+
+	/** Create a solver with the default search limit. */
+	public EndgameSolver() {
+		this(DEFAULT_NODE_LIMIT);
+	}
+
+	/**
+	 * Create a solver.
+	 * 
+	 * @param nodeLimit
+	 *            States searched in each chamber before giving up on solving
+	 *            it exactly, at least 1.
+	 */
+	public EndgameSolver(int nodeLimit) {
+		if (nodeLimit < 1)
+			throw new IllegalArgumentException("Solver must search at least 1 state.");
+		this.nodeLimit = nodeLimit;
+	}
+
+	/**
+	 * Solve the moves each player has left on a finished board, as bounds if
+	 * not exactly.
+	 * 
+	 * @param board
+	 *            Board to solve, left unchanged.
+	 * @return Whether board is finished, so results are set.
+	 */
+	public boolean solve(BoardModel board) {
+		if (!board.checkFinished())
+			return false;
+		solveChambers(board, false);
+		return true;
+	}
+
+	/**
+	 * Solve the moves each player has left in the chambers they own, which
+	 * hold no opposing queens, on any board. Chambers both players contest
+	 * are skipped, so results only count owned chambers, and are settled.
+	 * 
+	 * @param board
+	 *            Board to solve, left unchanged.
+	 */
+	public void solveOwned(BoardModel board) {
+		solveChambers(board, true);
+	}
+
+	/**
+	 * Solve the chamber of every queen, setting results.
+	 * 
+	 * @param board
+	 *            Board to solve.
+	 * @param ownedOnly
+	 *            Whether to skip chambers bordering opposing queens.
+	 */
+	private void solveChambers(BoardModel board, boolean ownedOnly) {
+		prepare(board);
+		lower[0] = lower[1] = upper[0] = upper[1] = 0;
+		exact = true;
+		settled = true;
+		bestMove = -1;
+		int mover = board.getTurn() ? 0 : 1;
+		int bestSlack = Integer.MAX_VALUE;
+		boolean bestGuarded = true;
+		// Solve the chamber of each queen not yet found in one.
+		int squares = rows * columns;
+		Arrays.fill(found, 0, squares, false);
+		for (int i = 0; i < squares; i++) {
+			int value = board.get(i / columns, i % columns);
+			if (found[i] || (value != BoardModel.B && value != BoardModel.W))
+				continue;
+			int player = value == BoardModel.B ? 0 : 1;
+			int move = solveChamber(board, flood(board, i, value), player, ownedOnly);
+			if (player != mover || move == -1)
+				continue;
+			// Keep the best chamber's first move, or the first chamber's
+			// among equals.
+			if (bestMove == -1 || (bestGuarded && !guarded) || (bestGuarded == guarded && slack < bestSlack)) {
+				bestMove = move;
+				bestSlack = slack;
+				bestGuarded = guarded;
+			}
+		}
+	}
+
+	/**
+	 * Find the chamber of a queen, through empty locations and queens of the
+	 * same player.
+	 * 
+	 * @param board
+	 *            Board being solved.
+	 * @param start
+	 *            Location of queen.
+	 * @param queen
+	 *            Board value of queen.
+	 * @return Number of chamber locations.
+	 */
+	private int flood(BoardModel board, int start, int queen) {
+		int count = 0;
+		locations[count++] = start;
+		found[start] = true;
+		for (int head = 0; head < count; head++) {
+			int r = locations[head] / columns;
+			int c = locations[head] % columns;
+			for (int d = 0; d < 8; d++) {
+				int rN = r + ROW_STEP[d];
+				int cN = c + COLUMN_STEP[d];
+				if (rN < 0 || rN >= rows || cN < 0 || cN >= columns || found[rN * columns + cN])
+					continue;
+				int value = board.get(rN, cN);
+				if (value == BoardModel.E || value == queen) {
+					found[rN * columns + cN] = true;
+					locations[count++] = rN * columns + cN;
+				}
+			}
+		}
+		return count;
+	}
+
+	/** Size scratch space for a board. */
+	private void prepare(BoardModel board) {
+		rows = board.getRowCount();
+		columns = board.getColumnCount();
+		int squares = rows * columns;
+		if (locations.length < squares) {
+			locations = new int[squares];
+			localOf = new int[squares];
+			Arrays.fill(localOf, -1);
+			found = new boolean[squares];
+			next = new int[squares * 8];
+			open = new boolean[squares];
+			guard = new boolean[squares];
+			queens = new int[squares];
+		}
+	}
+
+	/**
+	 * Solve the moves a player's queens can make in one of their chambers,
+	 * adding them to the player's bounds.
+	 * 
+	 * @param board
+	 *            Board being solved.
+	 * @param count
+	 *            Number of chamber locations.
+	 * @param player
+	 *            Owning player, 0 for black and 1 for white.
+	 * @param ownedOnly
+	 *            Whether to skip the chamber if it borders opposing queens.
+	 * @return Best first packed move in the chamber, or -1 if none.
+	 */
+	private int solveChamber(BoardModel board, int count, int player, boolean ownedOnly) {
+		// Index chamber locations, and link each to its neighbors.
+		for (int k = 0; k < count; k++)
+			localOf[locations[k]] = k;
+		int opponent = player == 0 ? BoardModel.W : BoardModel.B;
+		long empty = 0;
+		long queenMask = 0;
+		int queenCount = 0;
+		guardMask = 0;
+		boolean contested = false;
+		for (int k = 0; k < count; k++) {
+			int r = locations[k] / columns;
+			int c = locations[k] % columns;
+			guard[k] = false;
+			for (int d = 0; d < 8; d++) {
+				int rN = r + ROW_STEP[d];
+				int cN = c + COLUMN_STEP[d];
+				boolean inside = rN >= 0 && rN < rows && cN >= 0 && cN < columns;
+				next[k * 8 + d] = inside ? localOf[rN * columns + cN] : -1;
+				if (inside && board.get(rN, cN) == opponent)
+					guard[k] = true;
+			}
+			if (guard[k]) {
+				contested = true;
+				if (k < 64)
+					guardMask |= 1L << k;
+			}
+			open[k] = board.get(r, c) == BoardModel.E;
+			if (open[k]) {
+				if (k < 64)
+					empty |= 1L << k;
+			} else {
+				queens[queenCount++] = k;
+				if (k < 64)
+					queenMask |= 1L << k;
+			}
+		}
+		for (int k = 0; k < count; k++)
+			localOf[locations[k]] = -1;
+		if (contested) {
+			if (ownedOnly)
+				return -1;
+			// Only queens can border opposing queens in a finished game.
+			settled = false;
+			exact = false;
+		}
+		int emptyCount = count - queenCount;
+		// Fill greedily, then search for a better fill if it may exist.
+		int moves = greedyFill(queenCount);
+		int most = emptyCount;
+		if (moves < most && count <= 64) {
+			int greedyQ = bestQ;
+			int greedyT = bestT;
+			int greedyA = bestA;
+			stamp++;
+			nodes = 0;
+			exhausted = false;
+			int searched = fill(empty, queenMask, true);
+			if (!exhausted) {
+				moves = most = searched;
+			} else {
+				// Keep the greedy first move, which reaches the lower bound.
+				bestQ = greedyQ;
+				bestT = greedyT;
+				bestA = greedyA;
+			}
+		}
+		if (moves < most)
+			exact = false;
+		lower[player] += moves;
+		upper[player] += most;
+		slack = most - moves;
+		guarded = moves > 0 && guard[bestQ];
+		if (moves == 0)
+			return -1;
+		return Move.encode(rowOf(bestQ), columnOf(bestQ), rowOf(bestT), columnOf(bestT), rowOf(bestA),
+				columnOf(bestA));
+	}
+
+	/** @return Board row of a local chamber location. */
+	private int rowOf(int k) {
+		return locations[k] / columns;
+	}
+
+	/** @return Board column of a local chamber location. */
+	private int columnOf(int k) {
+		return locations[k] % columns;
+	}
+
+	/**
+	 * Fill the current chamber greedily, each move taking the queen to the
+	 * location left with the most empty neighbors, and shooting the arrow to
+	 * the location with the fewest, so dead ends are filled first. Sets the
+	 * best first move to the greedy one.
+	 * 
+	 * @param queenCount
+	 *            Number of queens in the chamber.
+	 * @return Number of moves made.
+	 */
+	private int greedyFill(int queenCount) {
+		int moves = 0;
+		while (true) {
+			int best = Integer.MIN_VALUE;
+			int bQ = -1;
+			int bT = -1;
+			int bA = -1;
+			int bIndex = -1;
+			for (int i = 0; i < queenCount; i++) {
+				int q = queens[i];
+				open[q] = true;
+				for (int d = 0; d < 8; d++)
+					for (int t = next[q * 8 + d]; t >= 0 && open[t]; t = next[t * 8 + d]) {
+						open[t] = false;
+						for (int dA = 0; dA < 8; dA++)
+							for (int a = next[t * 8 + dA]; a >= 0 && open[a]; a = next[a * 8 + dA]) {
+								open[a] = false;
+								int score = 8 * openNeighbors(t) - openNeighbors(a) - (guard[q] ? GUARD_PENALTY : 0);
+								open[a] = true;
+								if (score > best) {
+									best = score;
+									bQ = q;
+									bT = t;
+									bA = a;
+									bIndex = i;
+								}
+							}
+						open[t] = true;
+					}
+				open[q] = false;
+			}
+			if (bIndex < 0)
+				return moves;
+			if (moves == 0) {
+				bestQ = bQ;
+				bestT = bT;
+				bestA = bA;
+			}
+			open[bQ] = true;
+			open[bT] = false;
+			open[bA] = false;
+			queens[bIndex] = bT;
+			moves++;
+		}
+	}
+
+	/** @return Number of empty neighbors of a local location. */
+	private int openNeighbors(int k) {
+		int count = 0;
+		for (int d = 0; d < 8; d++) {
+			int n = next[k * 8 + d];
+			if (n >= 0 && open[n])
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Search the most moves the queens of the current chamber can make, until
+	 * the state limit is hit. Each move fills one empty location, so search
+	 * stops as soon as a move is found filling them all.
+	 * 
+	 * @param empty
+	 *            Mask of empty local locations.
+	 * @param queenMask
+	 *            Mask of local queen locations.
+	 * @param root
+	 *            Whether to set the best first move.
+	 * @return Most moves left, or 0 if the state limit was hit.
+	 */
+	private int fill(long empty, long queenMask, boolean root) {
+		if (++nodes > nodeLimit) {
+			exhausted = true;
+			return 0;
+		}
+		long h = empty * 0x9E3779B97F4A7C15L ^ queenMask * 0xC2B2AE3D27D4EB4FL;
+		int slot = (int) (h >>> 40) & (MEMO_SIZE - 1);
+		if (!root && memoStamp[slot] == stamp && memoEmpty[slot] == empty && memoQueens[slot] == queenMask)
+			return memoMoves[slot] - 1;
+		int most = Long.bitCount(empty);
+		int best = 0;
+		// Try queens not next to an opposing queen first.
+		for (int pass = 0; pass < 2 && best < most; pass++)
+			for (long qs = queenMask & (pass == 0 ? ~guardMask : guardMask); qs != 0 && best < most; qs &= qs - 1) {
+				int q = Long.numberOfTrailingZeros(qs);
+				for (int d = 0; d < 8 && best < most; d++)
+					for (int t = next[q * 8 + d]; t >= 0 && (empty >>> t & 1) != 0 && best < most; t = next[t * 8 + d]) {
+						long moved = empty & ~(1L << t) | 1L << q;
+						long queensMoved = queenMask & ~(1L << q) | 1L << t;
+						for (int dA = 0; dA < 8 && best < most; dA++)
+							for (int a = next[t * 8 + dA]; a >= 0 && (moved >>> a & 1) != 0
+									&& best < most; a = next[a * 8 + dA]) {
+								int v = 1 + fill(moved & ~(1L << a), queensMoved, false);
+								if (exhausted)
+									return 0;
+								if (v > best) {
+									best = v;
+									if (root) {
+										bestQ = q;
+										bestT = t;
+										bestA = a;
+									}
+								}
+							}
+					}
+			}
+		memoEmpty[slot] = empty;
+		memoQueens[slot] = queenMask;
+		memoMoves[slot] = best + 1;
+		memoStamp[slot] = stamp;
+		return best;
+	}
+
+	/**
+	 * @param black
+	 *            Whether black player.
+	 * @return Least moves a player has left in the last solve.
+	 */
+	public int getLower(boolean black) {
+		return lower[black ? 0 : 1];
+	}
+
+	/**
+	 * @param black
+	 *            Whether black player.
+	 * @return Most moves a player has left in the last solve.
+	 */
+	public int getUpper(boolean black) {
+		return upper[black ? 0 : 1];
+	}
+
+	/**
+	 * @return Whether no queen was next to an opposing queen in the last
+	 *         solve, so no chamber can reopen and the bounds hold.
+	 */
+	public boolean isSettled() {
+		return settled;
+	}
+
+	/** @return Whether moves left were solved exactly in the last solve. */
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * @return Packed move of the player to move in the last solve that keeps
+	 *         the most moves left, from the best of its chambers, or -1 if
+	 *         none.
+	 */
+	public int getBestMove() {
+		return bestMove;
+	}
+}
@@ -0,0 +1,498 @@
+package amazon.agent.search;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import amazon.agent.EvaluationFunction;
+import amazon.board.BoardModel;
+import amazon.board.Move;
+import amazon.board.PositionSnapshot;
+
+/**
+ * Monte Carlo tree search with UCT selection, grown by any number of threads
+ * at once on one shared tree. A thread selecting a node adds a virtual loss to
+ * it until its result is backed up, steering other threads to other lines.
+ * Leaves are valued by a playout to the end of the game, or by an evaluation
+ * function if given.
+ * 
+ * Nodes are pooled in primitive arrays of fixed capacity, so memory stays
+ * bounded however long the search runs. The children of a node take one
+ * contiguous block of the pool, allocated once the node has been visited
+ * enough times. Once the pool is full, the tree stops growing and search
+ * continues from its leaves.
+ */
+public class MonteCarloSearch implements SearchEngine {
+	// Child states of nodes not yet expanded, being expanded, and without
+	// possible moves.
+	private static final int UNEXPANDED = -1;
+	private static final int EXPANDING = -2;
+	private static final int TERMINAL = -3;
+	// Fixed point units of one win, for atomically summed values.
+	private static final long WIN = 1 << 16;
+	// Plies between checks for a finished game during playouts.
+	private static final int FINISH_INTERVAL = 4;
+	// Endgame solver states searched in each chamber during playouts, and
+	// the most points a finished playout can be won by for the solver to
+	// decide it, rather than points alone.
+	private static final int SOLVER_NODES = 1 << 10;
+	private static final int SOLVER_MARGIN = 2;
+	// Time between deadline checks, in iterations, less 1.
+	private static final int CHECK_MASK = 0xF;
+
+	// Playout policy, and evaluation function for leaves or null.
+	private PlayoutPolicy policy;
+	private EvaluationFunction evalF;
+	// UCT exploration constant.
+	private double exploration = 1;
+	// Visits before a node is expanded.
+	private int expandVisits = 8;
+	// Scale of evaluation function ranks, before mapping to a win
+	// probability.
+	private double evalScale = 1;
+
+	// Node pool, with the root at index 0. Each node has its packed move
+	// from its parent, first child index or child state, child count, visit
+	// count, virtual loss count, and summed value for the player moving
+	// into it.
+	private final int capacity;
+	private final int[] move;
+	private final AtomicIntegerArray firstChild;
+	private final int[] childCount;
+	private final AtomicIntegerArray visits;
+	private final AtomicIntegerArray virtual;
+	private final AtomicLongArray value;
+	// Next unused node index, and whether the pool is full.
+	private final AtomicInteger size = new AtomicInteger();
+	private volatile boolean full;
+
+	// Search threads, including the calling thread's.
+	private Worker[] workers;
+	// Threads running other workers, reused between searches.
+	private ExecutorService pool;
+	private Future<?>[] running;
+	// Whether searching the current root is over.
+	private volatile boolean stopped;
+	// Time to stop searching by.
+	private volatile long deadline;
+	// Whether player to move at root is black.
+	private boolean rootBlack;
+	// Root node index, moved down the tree when a search continues from a
+	// child of the last root.
+	private int root;
+
+	/** Search thread state. */
+	private class Worker implements Runnable {
+		// Worker's copy of the board, at the root between iterations.
+		private BoardModel board;
+		private final Random random;
+		// Solver of finished playouts.
+		private final EndgameSolver solver = new EndgameSolver(SOLVER_NODES);
+		// Packed move buffer.
+		private final int[] moves = new int[Move.MAX_MOVES];
+		// Nodes selected from the root, and moves of the current playout.
+		private final int[] path = new int[Move.MAX_MOVES];
+		private final int[] playout = new int[Move.MAX_MOVES];
+		// Position before an evaluated move.
+		private final PositionSnapshot initial = new PositionSnapshot();
+		// Iterations of the last search.
+		private long iterations;
+
+		public Worker(long seed) {
+			random = new Random(seed);
+		}
+
+		@Override
+		public void run() {
+			iterations = 0;
+			while (!stopped) {
+				iterate();
+				if ((++iterations & CHECK_MASK) == 0 && System.currentTimeMillis() >= deadline)
+					stopped = true;
+			}
+		}
+
+		/** Select a leaf, value it, and back up its value to the root. */
+		private void iterate() {
+			int node = root;
+			int depth = 0;
+			while (true) {
+				int first = firstChild.get(node);
+				if (first == UNEXPANDED && !full && (node == root || visits.get(node) >= expandVisits))
+					first = expand(node);
+				if (first < 0)
+					break;
+				node = select(node, first);
+				virtual.incrementAndGet(node);
+				board.move(move[node]);
+				path[++depth] = node;
+			}
+			double black = depth == 0 ? 0.5 : evalF != null ? evaluate(move[node]) : playout();
+			// Back up value, from the leaf's player moving into it.
+			boolean moverBlack = rootBlack ^ (depth % 2 == 0);
+			for (int d = depth; d > 0; d--) {
+				int n = path[d];
+				value.addAndGet(n, (long) ((moverBlack ? black : 1 - black) * WIN));
+				visits.incrementAndGet(n);
+				virtual.decrementAndGet(n);
+				board.undo(move[n]);
+				moverBlack = !moverBlack;
+			}
+			visits.incrementAndGet(root);
+		}
+
+		/**
+		 * Expand a node, generating its children, unless another thread is
+		 * already expanding it or the pool is full.
+		 * 
+		 * @return First child index, or child state if not expanded.
+		 */
+		private int expand(int node) {
+			if (!firstChild.compareAndSet(node, UNEXPANDED, EXPANDING))
+				return firstChild.get(node);
+			int count = board.possibleMoves(moves, true);
+			if (count == 0) {
+				firstChild.set(node, TERMINAL);
+				return TERMINAL;
+			}
+			int first = size.get() + count > capacity ? capacity : size.getAndAdd(count);
+			if (first + count > capacity) {
+				// Leave node unexpanded, and stop growing the tree.
+				full = true;
+				firstChild.set(node, UNEXPANDED);
+				return UNEXPANDED;
+			}
+			// Shuffle children, so unvisited ones are tried in random order.
+			for (int i = count - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int m = moves[i];
+				moves[i] = moves[j];
+				moves[j] = m;
+			}
+			for (int i = 0; i < count; i++) {
+				int child = first + i;
+				move[child] = moves[i];
+				childCount[child] = 0;
+				visits.set(child, 0);
+				virtual.set(child, 0);
+				value.set(child, 0);
+				firstChild.set(child, UNEXPANDED);
+			}
+			childCount[node] = count;
+			// Publish children once they are set.
+			firstChild.set(node, first);
+			return first;
+		}
+
+		/**
+		 * Select the child of a node with the highest upper confidence bound,
+		 * counting virtual losses as visits without value.
+		 * 
+		 * @return Selected child index.
+		 */
+		private int select(int node, int first) {
+			double logVisits = Math.log(visits.get(node) + virtual.get(node) + 1);
+			int best = first;
+			double bestBound = Double.NEGATIVE_INFINITY;
+			for (int child = first; child < first + childCount[node]; child++) {
+				int n = visits.get(child) + virtual.get(child);
+				// Try unvisited children first.
+				if (n == 0)
+					return child;
+				double bound = (double) value.get(child) / WIN / n + exploration * Math.sqrt(logVisits / n);
+				if (bound > bestBound) {
+					bestBound = bound;
+					best = child;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Play out the game from the board with the playout policy, until a
+		 * player can't move or the game is finished, then restore the board.
+		 * 
+		 * @return 1 if black wins, or 0 if white wins.
+		 */
+		private double playout() {
+			int plies = 0;
+			double black;
+			while (true) {
+				if (plies % FINISH_INTERVAL == 0 && board.checkFinished()) {
+					black = finishedWinner();
+					break;
+				}
+				int count = board.possibleMoves(moves);
+				// A player unable to move loses.
+				if (count == 0) {
+					black = board.getTurn() ? 0 : 1;
+					break;
+				}
+				int m = moves[policy.choose(board, moves, count, random)];
+				board.move(m);
+				playout[plies++] = m;
+			}
+			while (plies > 0)
+				board.undo(playout[--plies]);
+			return black;
+		}
+
+		/**
+		 * @return 1 if black wins the finished game on the board, or 0 if
+		 *         white does, by which player can make more moves in their
+		 *         own chambers. Moves are counted by points, or by the
+		 *         solver's fill when points are close. The player to move
+		 *         loses when even.
+		 */
+		private double finishedWinner() {
+			int[][] points = board.getPoints();
+			int black = points[0][0];
+			int white = points[0][1];
+			if (Math.abs(black - white) <= SOLVER_MARGIN) {
+				solver.solve(board);
+				black = solver.getLower(true);
+				white = solver.getLower(false);
+			}
+			if (black != white)
+				return black > white ? 1 : 0;
+			return board.getTurn() ? 0 : 1;
+		}
+
+		/**
+		 * Evaluate the move just performed on the board.
+		 * 
+		 * @return Probability of black winning.
+		 */
+		private double evaluate(int m) {
+			// A player unable to move loses.
+			if (!board.hasMoves(board.getTurn()))
+				return board.getTurn() ? 0 : 1;
+			board.undo(m);
+			initial.capture(board);
+			board.move(m);
+			double rank = evalF.eF(initial, board);
+			if (Double.isNaN(rank))
+				return 0.5;
+			return 1 / (1 + Math.exp(-rank * evalScale));
+		}
+	}
+
+	/**
+	 * Create a Monte Carlo tree search.
+	 * 
+	 * @param policy
+	 *            Playout policy.
+	 * @param evalF
+	 *            Evaluation function valuing leaves instead of playouts, from
+	 *            1 to -1, black to white favor, or null to play out.
+	 * @param capacity
+	 *            Maximum number of tree nodes.
+	 * @param threads
+	 *            Number of search threads, including the calling thread.
+	 */
+	public MonteCarloSearch(PlayoutPolicy policy, EvaluationFunction evalF, int capacity, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Search needs at least 1 thread.");
+		if (capacity < 1)
+			throw new IllegalArgumentException("Tree needs at least 1 node.");
+		this.policy = policy;
+		this.evalF = evalF;
+		this.capacity = capacity;
+		move = new int[capacity];
+		firstChild = new AtomicIntegerArray(capacity);
+		childCount = new int[capacity];
+		visits = new AtomicIntegerArray(capacity);
+		virtual = new AtomicIntegerArray(capacity);
+		value = new AtomicLongArray(capacity);
+		workers = new Worker[threads];
+		Random seeds = new Random();
+		for (int i = 0; i < threads; i++)
+			workers[i] = new Worker(seeds.nextLong());
+		running = new Future<?>[threads - 1];
+		if (threads > 1)
+			pool = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					// Don't keep the program running for idle workers.
+					Thread thread = new Thread(r, "search-worker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.search.SearchEngine#search(amazon.board.BoardModel,
+	 * long)
+	 */
+	@Override
+	public int search(BoardModel board, long deadline) {
+		// Fill chambers with the solver's move once the game is finished and
+		// settled, with no queen next to an opposing queen.
+		EndgameSolver solver = workers[0].solver;
+		if (solver.solve(board) && solver.isSettled() && solver.getBestMove() != -1)
+			return solver.getBestMove();
+		// Continue from a child of the last root if the board is one,
+		// keeping its subtree while the pool has room left to grow it.
+		// Otherwise start a new tree.
+		int child = full || size.get() > capacity / 2 ? -1 : findChild(board);
+		if (child >= 0) {
+			root = child;
+		} else {
+			root = 0;
+			size.set(1);
+			full = false;
+			firstChild.set(0, UNEXPANDED);
+			childCount[0] = 0;
+			visits.set(0, 0);
+			virtual.set(0, 0);
+			value.set(0, 0);
+		}
+		rootBlack = board.getTurn();
+		this.deadline = deadline;
+		stopped = false;
+		for (Worker worker : workers)
+			worker.board = board.clone();
+		for (int i = 1; i < workers.length; i++)
+			running[i - 1] = pool.submit(workers[i]);
+		workers[0].run();
+		for (Future<?> worker : running)
+			try {
+				worker.get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new IllegalStateException("Search worker failed!", e);
+			}
+		// Choose the most visited move, or the first possible move if the
+		// root wasn't expanded before the deadline.
+		int first = firstChild.get(root);
+		if (first < 0) {
+			int[] moves = workers[0].moves;
+			return board.possibleMoves(moves) == 0 ? -1 : moves[0];
+		}
+		int best = first;
+		for (int c = first; c < first + childCount[root]; c++)
+			if (visits.get(c) > visits.get(best))
+				best = c;
+		return move[best];
+	}
+
+	/**
+	 * Find the child of the last search's root whose position a board is in,
+	 * such as after the opponent's reply to a pondered position.
+	 * 
+	 * @param board
+	 *            Board to search from.
+	 * @return Child node index, or -1 if none.
+	 */
+	private int findChild(BoardModel board) {
+		// The first worker's board is left at the last root.
+		BoardModel last = workers[0].board;
+		int first = firstChild.get(root);
+		if (last == null || first < 0)
+			return -1;
+		long key = board.hash();
+		for (int child = first; child < first + childCount[root]; child++) {
+			last.move(move[child]);
+			boolean found = last.hash() == key;
+			last.undo(move[child]);
+			if (found)
+				return child;
+		}
+		return -1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.search.SearchEngine#stop()
+	 */
+	@Override
+	public void stop() {
+		stopped = true;
+	}
+
+	/** Stop worker threads. The search can't be used afterwards. */
+	public void shutdown() {
+		if (pool != null)
+			pool.shutdownNow();
+	}
+
+	/**
+	 * @param exploration
+	 *            UCT exploration constant.
+	 */
+	public void setExploration(double exploration) {
+		this.exploration = exploration;
+	}
+
+	/**
+	 * @param expandVisits
+	 *            Visits before a node is expanded, at least 1.
+	 */
+	public void setExpandVisits(int expandVisits) {
+		if (expandVisits < 1)
+			throw new IllegalArgumentException("Nodes must be visited before being expanded.");
+		this.expandVisits = expandVisits;
+	}
+
+	/**
+	 * @param evalScale
+	 *            Scale of evaluation function ranks, before mapping to a win
+	 *            probability with the logistic function.
+	 */
+	public void setEvalScale(double evalScale) {
+		this.evalScale = evalScale;
+	}
+
+	/** @return Number of iterations by all threads in the last search. */
+	public long getIterations() {
+		long iterations = 0;
+		for (Worker worker : workers)
+			iterations += worker.iterations;
+		return iterations;
+	}
+
+	/** @return Number of tree nodes in use. */
+	public int getTreeSize() {
+		return Math.min(size.get(), capacity);
+	}
+
+	/** @return Number of search threads, including the calling thread. */
+	public int getThreads() {
+		return workers.length;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.search.SearchEngine#getSummary()
+	 */
+	@Override
+	public String getSummary() {
+		return String.format("Searched %d playouts on %d threads with %d tree nodes. Best move wins %.1f%%.",
+				getIterations(), getThreads(), getTreeSize(), getWinRate() * 100);
+	}
+
+	/**
+	 * @return Win rate of the last search's most visited move, for the player
+	 *         who moves it, or 0.5 if none.
+	 */
+	public double getWinRate() {
+		int first = firstChild.get(root);
+		if (first < 0)
+			return 0.5;
+		int best = first;
+		for (int child = first; child < first + childCount[root]; child++)
+			if (visits.get(child) > visits.get(best))
+				best = child;
+		return visits.get(best) == 0 ? 0.5 : (double) value.get(best) / WIN / visits.get(best);
+	}
+}
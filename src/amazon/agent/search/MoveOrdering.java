@@ -0,0 +1,201 @@
+package amazon.agent.search;
+
+import amazon.board.BoardModel;
+import amazon.board.Move;
+
+/**
+ * Move ordering for a single search thread, so moves likely to cause a cutoff
+ * are tried first. Moves are scored with the transposition table's best move
+ * first, then the killer moves of their ply, then by history and a cheap
+ * static score. Moves are then picked best first one at a time, so moves
+ * after a cutoff are never sorted.
+ * 
+ * History counts how often a queen relocation and an arrow location caused a
+ * cutoff, weighted by the depth searched below them, and killer moves are the
+ * last two moves to cause a cutoff at each ply. Locations are indexed by
+ * their packed move byte, so boards up to 16 by 16 fit.
+ */
+public class MoveOrdering {
+	// Scores of the table's best move and killer moves, above any other.
+	private static final int HASH_SCORE = 1 << 30;
+	private static final int KILLER_SCORE = 1 << 29;
+	// History level at which all history is halved.
+	private static final int HISTORY_LIMIT = 1 << 24;
+	// Weight of static score against history.
+	private static final int STATIC_WEIGHT = 4;
+	// Neighbor row and column steps.
+	private static final int[] ROW_STEP = { -1, -1, -1, 0, 0, 1, 1, 1 };
+	private static final int[] COLUMN_STEP = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+	// Cutoff history of each initial and final queen location pair, and of
+	// each arrow location.
+	private final int[] queenHistory = new int[256 * 256];
+	private final int[] arrowHistory = new int[256];
+	// Two killer moves of each ply, or -1.
+	private int[][] killers = new int[0][];
+	// Move score buffer of each ply.
+	private int[][] scores = new int[0][];
+
+	/** Age history and forget killers before a new search. */
+	public void newSearch() {
+		ageHistory();
+		for (int[] plyKillers : killers) {
+			plyKillers[0] = -1;
+			plyKillers[1] = -1;
+		}
+	}
+
+	/**
+	 * Score the possible moves of a position for ordering.
+	 * 
+	 * @param board
+	 *            Board in the position.
+	 * @param moves
+	 *            Possible packed moves.
+	 * @param count
+	 *            Number of possible moves.
+	 * @param ply
+	 *            Plies from the root.
+	 * @param hashMove
+	 *            Transposition table's best move, or -1 if none.
+	 */
+	public void score(BoardModel board, int[] moves, int count, int ply, int hashMove) {
+		int[] plyScores = scores(ply);
+		int[] plyKillers = killers(ply);
+		int opponent = board.getTurn() ? BoardModel.W : BoardModel.B;
+		for (int i = 0; i < count; i++) {
+			int m = moves[i];
+			if (m == hashMove)
+				plyScores[i] = HASH_SCORE;
+			else if (m == plyKillers[0] || m == plyKillers[1])
+				plyScores[i] = KILLER_SCORE - (m == plyKillers[0] ? 0 : 1);
+			else
+				plyScores[i] = queenHistory[m & 0xFFFF] + arrowHistory[m >>> 16 & 0xFF]
+						+ STATIC_WEIGHT * staticScore(board, m, opponent);
+		}
+	}
+
+	/**
+	 * Cheap static score of a move, from the mobility the moved queen gains
+	 * and the opposing queens the arrow hems in.
+	 * 
+	 * @param board
+	 *            Board before the move.
+	 * @param m
+	 *            Packed move.
+	 * @param opponent
+	 *            Board value of opposing queens.
+	 * @return Static score, higher for better moves.
+	 */
+	private static int staticScore(BoardModel board, int m, int opponent) {
+		int score = emptyNeighbors(board, Move.rQF(m), Move.cQF(m)) - emptyNeighbors(board, Move.rQI(m), Move.cQI(m));
+		int rA = Move.rA(m);
+		int cA = Move.cA(m);
+		for (int k = 0; k < ROW_STEP.length; k++) {
+			int r = rA + ROW_STEP[k];
+			int c = cA + COLUMN_STEP[k];
+			if (r >= 0 && r < board.getRowCount() && c >= 0 && c < board.getColumnCount()
+					&& board.get(r, c) == opponent)
+				score += 2;
+		}
+		return score;
+	}
+
+	/** @return Number of empty neighbors of a location. */
+	private static int emptyNeighbors(BoardModel board, int rL, int cL) {
+		int count = 0;
+		for (int k = 0; k < ROW_STEP.length; k++) {
+			int r = rL + ROW_STEP[k];
+			int c = cL + COLUMN_STEP[k];
+			if (r >= 0 && r < board.getRowCount() && c >= 0 && c < board.getColumnCount()
+					&& board.get(r, c) == BoardModel.E)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Move the best scored of the remaining moves to the next place, along
+	 * with its score.
+	 * 
+	 * @param moves
+	 *            Scored packed moves.
+	 * @param count
+	 *            Number of moves.
+	 * @param ply
+	 *            Plies from the root the moves were scored at.
+	 * @param next
+	 *            Index of next place, with all moves before it already
+	 *            picked.
+	 * @return Move picked.
+	 */
+	public int pick(int[] moves, int count, int ply, int next) {
+		int[] plyScores = scores[ply];
+		int best = next;
+		for (int i = next + 1; i < count; i++)
+			if (plyScores[i] > plyScores[best])
+				best = i;
+		int m = moves[best];
+		moves[best] = moves[next];
+		moves[next] = m;
+		int s = plyScores[best];
+		plyScores[best] = plyScores[next];
+		plyScores[next] = s;
+		return m;
+	}
+
+	/**
+	 * Record a move that caused a cutoff.
+	 * 
+	 * @param m
+	 *            Packed move.
+	 * @param ply
+	 *            Plies from the root it was played at.
+	 * @param depth
+	 *            Depth searched below it.
+	 */
+	public void cutoff(int m, int ply, int depth) {
+		int[] plyKillers = killers(ply);
+		if (plyKillers[0] != m) {
+			plyKillers[1] = plyKillers[0];
+			plyKillers[0] = m;
+		}
+		int weight = depth * depth;
+		queenHistory[m & 0xFFFF] += weight;
+		arrowHistory[m >>> 16 & 0xFF] += weight;
+		if (queenHistory[m & 0xFFFF] > HISTORY_LIMIT || arrowHistory[m >>> 16 & 0xFF] > HISTORY_LIMIT)
+			ageHistory();
+	}
+
+	/** Halve all history, so recent cutoffs count for more. */
+	private void ageHistory() {
+		for (int i = 0; i < queenHistory.length; i++)
+			queenHistory[i] >>= 1;
+		for (int i = 0; i < arrowHistory.length; i++)
+			arrowHistory[i] >>= 1;
+	}
+
+	/** @return Killer moves of a ply, created on first use. */
+	private int[] killers(int ply) {
+		if (killers.length <= ply) {
+			int[][] grown = new int[ply + 1][];
+			System.arraycopy(killers, 0, grown, 0, killers.length);
+			for (int i = killers.length; i <= ply; i++)
+				grown[i] = new int[] { -1, -1 };
+			killers = grown;
+		}
+		return killers[ply];
+	}
+
+	/** @return Score buffer of a ply, created on first use. */
+	private int[] scores(int ply) {
+		if (scores.length <= ply) {
+			int[][] grown = new int[ply + 1][];
+			System.arraycopy(scores, 0, grown, 0, scores.length);
+			scores = grown;
+		}
+		if (scores[ply] == null)
+			scores[ply] = new int[Move.MAX_MOVES];
+		return scores[ply];
+	}
+}
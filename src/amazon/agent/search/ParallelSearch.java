@@ -0,0 +1,182 @@
+package amazon.agent.search;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import amazon.agent.EvaluationFunction;
+import amazon.board.BoardModel;
+
+/**
+ * Parallel search in the lazy SMP style. A main alpha-beta search runs on the
+ * calling thread, while helper searches run the same iterative deepening on
+ * pooled threads, each starting on different root moves. All share one
+ * transposition table, so helpers fill it with results the main search and
+ * each other then reuse, which splits the work below the root however few
+ * root moves there are. Helpers are stopped when the main search returns.
+ */
+public class ParallelSearch implements SearchEngine {
+	// Main search, followed by helper searches.
+	private AlphaBetaSearch[] searches;
+	// Shared table of search results.
+	private TranspositionTable table;
+	// Threads running helper searches, reused between searches.
+	private ExecutorService pool;
+	// Helper search results.
+	private Future<?>[] helpers;
+	// Search whose move was chosen by the last search.
+	private AlphaBetaSearch chosen;
+
+	/**
+	 * Create a parallel search.
+	 * 
+	 * @param evalF
+	 *            Evaluation function for ranking moves, from 1 to -1, black
+	 *            to white favor, called from every thread at once.
+	 * @param depth
+	 *            Maximum search depth in plies, at least 1.
+	 * @param table
+	 *            Table of search results shared by all threads.
+	 * @param threads
+	 *            Number of search threads, including the calling thread.
+	 */
+	public ParallelSearch(EvaluationFunction evalF, int depth, TranspositionTable table, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("Search needs at least 1 thread.");
+		if (table == null)
+			throw new IllegalArgumentException("Parallel search needs a transposition table.");
+		this.table = table;
+		searches = new AlphaBetaSearch[threads];
+		for (int i = 0; i < threads; i++) {
+			searches[i] = new AlphaBetaSearch(evalF, depth, table);
+			if (i > 0)
+				searches[i].setHelper(i, threads - 1);
+		}
+		helpers = new Future<?>[threads - 1];
+		chosen = searches[0];
+		if (threads > 1)
+			pool = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					// Don't keep the program running for idle helpers.
+					Thread thread = new Thread(r, "search-helper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.search.SearchEngine#search(amazon.board.BoardModel,
+	 * long)
+	 */
+	@Override
+	public int search(final BoardModel board, final long deadline) {
+		table.newSearch();
+		// Start helpers, each on its own copy of the board.
+		for (int i = 1; i < searches.length; i++) {
+			final AlphaBetaSearch helper = searches[i];
+			final BoardModel helperBoard = board.clone();
+			helper.clearStop();
+			helpers[i - 1] = pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					helper.run(helperBoard, deadline);
+				}
+			});
+		}
+		searches[0].clearStop();
+		int bestMove = searches[0].run(board, deadline);
+		// Stop helpers and wait for them, so their searches can be reused.
+		for (int i = 1; i < searches.length; i++)
+			searches[i].stop();
+		for (Future<?> helper : helpers)
+			try {
+				helper.get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new IllegalStateException("Search helper failed!", e);
+			}
+		// Prefer a helper's move if it completed a deeper iteration.
+		chosen = searches[0];
+		for (int i = 1; i < searches.length; i++)
+			if (searches[i].getCompletedDepth() > chosen.getCompletedDepth())
+				chosen = searches[i];
+		if (chosen != searches[0])
+			bestMove = chosen.getBestMove();
+		return bestMove;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.search.SearchEngine#stop()
+	 */
+	@Override
+	public void stop() {
+		for (AlphaBetaSearch search : searches)
+			search.stop();
+	}
+
+	/** Stop helper threads. The search can't be used afterwards. */
+	public void shutdown() {
+		if (pool != null)
+			pool.shutdownNow();
+	}
+
+	/** @return Number of search threads, including the calling thread. */
+	public int getThreads() {
+		return searches.length;
+	}
+
+	/** @return Depth of the chosen search's last completed iteration. */
+	public int getCompletedDepth() {
+		return chosen.getCompletedDepth();
+	}
+
+	/** @return Score of the chosen search's best move. */
+	public double getScore() {
+		return chosen.getScore();
+	}
+
+	/** @return Number of positions visited by all threads in the last search. */
+	public long getNodes() {
+		long nodes = 0;
+		for (AlphaBetaSearch search : searches)
+			nodes += search.getNodes();
+		return nodes;
+	}
+
+	/**
+	 * @return Fraction of all threads' transposition table lookups in the
+	 *         last search that found a stored result, or 0 if none.
+	 */
+	public double getHitRate() {
+		long probes = 0;
+		long hits = 0;
+		for (AlphaBetaSearch search : searches) {
+			probes += search.getProbes();
+			hits += search.getHits();
+		}
+		return probes == 0 ? 0 : (double) hits / probes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.agent.search.SearchEngine#getSummary()
+	 */
+	@Override
+	public String getSummary() {
+		return String.format("Searched %d positions on %d threads to %d depth. Table hit %.1f%% of lookups, %.1f%% full.",
+				getNodes(), getThreads(), getCompletedDepth(), getHitRate() * 100, table.fill() * 100);
+	}
+
+	/** @return Shared transposition table. */
+	public TranspositionTable getTable() {
+		return table;
+	}
+}
@@ -0,0 +1,28 @@
+package amazon.agent.search;
+
+import java.util.Random;
+
+import amazon.board.BoardModel;
+
+/**
+ * Playout policy interface for choosing moves of Monte Carlo playouts.
+ * Policies are called from every search thread at once, each with its own
+ * board and random generator.
+ */
+public interface PlayoutPolicy {
+
+	/**
+	 * Choose a move to play out.
+	 * 
+	 * @param board
+	 *            Board to move on, to be left as it was given.
+	 * @param moves
+	 *            Possible packed moves of the player whose turn it is.
+	 * @param count
+	 *            Number of possible moves, at least 1.
+	 * @param random
+	 *            Random generator of the calling thread.
+	 * @return Index of chosen move.
+	 */
+	int choose(BoardModel board, int[] moves, int count, Random random);
+}
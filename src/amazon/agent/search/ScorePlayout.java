@@ -0,0 +1,62 @@
+package amazon.agent.search;
+
+import java.util.Random;
+
+import amazon.agent.EvaluationFunction;
+import amazon.agent.ScoreFunction;
+import amazon.board.BoardModel;
+import amazon.board.PositionSnapshot;
+
+/**
+ * Playout policy guided by {@link ScoreFunction}, choosing the best scored of
+ * a few randomly sampled possible moves.
+ */
+public class ScorePlayout implements PlayoutPolicy {
+	/** Score function to rank sampled moves by. */
+	private EvaluationFunction score = new ScoreFunction();
+	/** Number of moves sampled per choice. */
+	private int samples;
+	/** Position before the sampled moves, for each calling thread. */
+	private ThreadLocal<PositionSnapshot> initial = new ThreadLocal<PositionSnapshot>() {
+		@Override
+		protected PositionSnapshot initialValue() {
+			return new PositionSnapshot();
+		}
+	};
+
+	/**
+	 * Create a score guided playout policy.
+	 * 
+	 * @param samples
+	 *            Number of moves sampled per choice, at least 1.
+	 */
+	public ScorePlayout(int samples) {
+		if (samples < 1)
+			throw new IllegalArgumentException("At least 1 move must be sampled.");
+		this.samples = samples;
+	}
+
+	@Override
+	public int choose(BoardModel board, int[] moves, int count, Random random) {
+		if (count == 1)
+			return 0;
+		boolean black = board.getTurn();
+		PositionSnapshot before = initial.get();
+		before.capture(board);
+		int bestIndex = 0;
+		double bestRank = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < samples; i++) {
+			int index = random.nextInt(count);
+			board.move(moves[index]);
+			double rank = score.eF(before, board);
+			board.undo(moves[index]);
+			// Rank for the player moving, with undefined ranks as even.
+			rank = Double.isNaN(rank) ? 0 : black ? rank : -rank;
+			if (rank > bestRank) {
+				bestRank = rank;
+				bestIndex = index;
+			}
+		}
+		return bestIndex;
+	}
+}
@@ -0,0 +1,31 @@
+package amazon.agent.search;
+
+import amazon.board.BoardModel;
+
+/**
+ * Search engine interface for choosing a move from a board position.
+ */
+public interface SearchEngine {
+
+	/**
+	 * Search for the best move of the player whose turn it is. The given board
+	 * is left unchanged.
+	 * 
+	 * @param board
+	 *            Board to search from.
+	 * @param deadline
+	 *            Time to stop searching by, in milliseconds as from
+	 *            {@link System#currentTimeMillis()}.
+	 * @return Best packed move found, or -1 if there are no possible moves.
+	 */
+	int search(BoardModel board, long deadline);
+
+	/**
+	 * Stop a search running on another thread as soon as possible, as if it
+	 * ran out of time. A search not yet started when stopped still runs.
+	 */
+	void stop();
+
+	/** @return Readable summary of the last search, for printing. */
+	String getSummary();
+}
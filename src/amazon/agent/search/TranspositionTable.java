@@ -0,0 +1,180 @@
+package amazon.agent.search;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size transposition table of search results, keyed by position hash and
+ * shared by any number of search threads without locking. Each entry is three
+ * longs: the key exclusive or'ed with the other two, the score's bits, and an
+ * info word packing best move, depth, bound, and search age. An entry torn by
+ * concurrent writes fails verification and reads as missing.
+ * 
+ * Entries are kept in buckets of two. The first entry of a bucket keeps the
+ * deepest result of the current search, and the second always takes the
+ * latest result that the first doesn't.
+ */
+public class TranspositionTable {
+	/** Bound type of an exact score. */
+	public static final int EXACT = 1;
+	/** Bound type of a score that the true score is at least. */
+	public static final int LOWER = 2;
+	/** Bound type of a score that the true score is at most. */
+	public static final int UPPER = 3;
+
+	// Longs per entry and per bucket.
+	private static final int ENTRY = 3;
+	private static final int BUCKET = 2 * ENTRY;
+	// Info word layout.
+	private static final int MOVE_BITS = 24;
+	private static final long NO_MOVE = (1L << MOVE_BITS) - 1;
+	private static final int DEPTH_SHIFT = MOVE_BITS;
+	private static final int BOUND_SHIFT = DEPTH_SHIFT + 8;
+	private static final int AGE_SHIFT = BOUND_SHIFT + 2;
+	// Buckets sampled for fill.
+	private static final int FILL_SAMPLE = 1000;
+
+	// Table entries.
+	private final long[] table;
+	// Bucket index mask.
+	private final int mask;
+	// Age of current search, from 0 to 255.
+	private volatile int age;
+
+	/**
+	 * Create a table of at most a given size.
+	 * 
+	 * @param megabytes
+	 *            Table size in megabytes, rounded down to a power of two
+	 *            buckets.
+	 */
+	public TranspositionTable(int megabytes) {
+		if (megabytes < 1)
+			throw new IllegalArgumentException("Table size must be at least 1 MB.");
+		long buckets = Long.highestOneBit((long) megabytes * 1024 * 1024 / (BUCKET * 8));
+		// Keep within array length limits.
+		buckets = Math.min(buckets, 1 << 28);
+		table = new long[(int) buckets * BUCKET];
+		mask = (int) buckets - 1;
+	}
+
+	/**
+	 * Start a new search, so results of earlier searches are replaced first.
+	 */
+	public void newSearch() {
+		age = (age + 1) & 0xFF;
+	}
+
+	/** Remove all entries. */
+	public void clear() {
+		Arrays.fill(table, 0);
+	}
+
+	/**
+	 * Look up a position.
+	 * 
+	 * @param key
+	 *            Position hash.
+	 * @param entry
+	 *            Array of at least two longs, set to the entry's score bits
+	 *            and info word if found.
+	 * @return Whether position was found.
+	 */
+	public boolean probe(long key, long[] entry) {
+		int i = index(key);
+		for (int k = 0; k < 2; k++, i += ENTRY) {
+			long check = table[i];
+			long score = table[i + 1];
+			long info = table[i + 2];
+			if (info != 0 && (check ^ score ^ info) == key) {
+				entry[0] = score;
+				entry[1] = info;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Store a search result for a position.
+	 * 
+	 * @param key
+	 *            Position hash.
+	 * @param score
+	 *            Score for the player to move.
+	 * @param move
+	 *            Best packed move, or -1 if none.
+	 * @param depth
+	 *            Depth searched, from 1 to 255.
+	 * @param bound
+	 *            Bound type of score.
+	 */
+	public void store(long key, double score, int move, int depth, int bound) {
+		int i = index(key);
+		long info = (move < 0 ? NO_MOVE : move) | (long) depth << DEPTH_SHIFT | (long) bound << BOUND_SHIFT
+				| (long) age << AGE_SHIFT;
+		// Keep the first entry for the deepest result of the current search,
+		// unless it holds the same position.
+		long first = table[i + 2];
+		boolean same = (table[i] ^ table[i + 1] ^ first) == key;
+		if (!same && age(first) == age && depth(first) > depth)
+			i += ENTRY;
+		long scoreBits = Double.doubleToRawLongBits(score);
+		table[i] = key ^ scoreBits ^ info;
+		table[i + 1] = scoreBits;
+		table[i + 2] = info;
+	}
+
+	/** @return Entry index of first entry in a position's bucket. */
+	private int index(long key) {
+		return (int) (key & mask) * BUCKET;
+	}
+
+	/** @return Score of a found entry. */
+	public static double score(long[] entry) {
+		return Double.longBitsToDouble(entry[0]);
+	}
+
+	/** @return Best packed move of a found entry, or -1 if none. */
+	public static int move(long[] entry) {
+		long move = entry[1] & NO_MOVE;
+		return move == NO_MOVE ? -1 : (int) move;
+	}
+
+	/** @return Depth searched of a found entry. */
+	public static int depth(long[] entry) {
+		return depth(entry[1]);
+	}
+
+	/** @return Bound type of a found entry. */
+	public static int bound(long[] entry) {
+		return (int) (entry[1] >>> BOUND_SHIFT) & 3;
+	}
+
+	/** @return Depth of an info word. */
+	private static int depth(long info) {
+		return (int) (info >>> DEPTH_SHIFT) & 0xFF;
+	}
+
+	/** @return Search age of an info word. */
+	private static int age(long info) {
+		return (int) (info >>> AGE_SHIFT) & 0xFF;
+	}
+
+	/**
+	 * @return Fraction of entries holding results of the current search,
+	 *         sampled from the start of the table.
+	 */
+	public double fill() {
+		int buckets = Math.min(FILL_SAMPLE, mask + 1);
+		int used = 0;
+		for (int i = 0; i < buckets * BUCKET; i += ENTRY)
+			if (table[i + 2] != 0 && age(table[i + 2]) == age)
+				used++;
+		return used / (2.0 * buckets);
+	}
+
+	/** @return Table size in megabytes. */
+	public double megabytes() {
+		return table.length * 8.0 / 1024 / 1024;
+	}
+}
@@ -0,0 +1,15 @@
+package amazon.agent.search;
+
+import java.util.Random;
+
+import amazon.board.BoardModel;
+
+/**
+ * Playout policy choosing every possible move with equal probability.
+ */
+public class UniformPlayout implements PlayoutPolicy {
+	@Override
+	public int choose(BoardModel board, int[] moves, int count, Random random) {
+		return random.nextInt(count);
+	}
+}
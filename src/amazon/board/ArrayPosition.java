@@ -0,0 +1,80 @@
+package amazon.board;
+
+/**
+ * Position viewing board and chamber arrays, as from
+ * {@link BoardModel#getState()} and {@link BoardModel#getChambers()}. The
+ * arrays are read in place, not copied.
+ */
+public class ArrayPosition implements Position {
+	// Viewed board state and chambers.
+	private final byte[][] state;
+	private final byte[][][] chambers;
+	// Black or white turn.
+	private final boolean blackTurn;
+
+	/**
+	 * View board and chamber arrays as a position.
+	 *
+	 * @param state
+	 *            Board state.
+	 * @param chambers
+	 *            Chamber ownership arrays of the board state.
+	 * @param blackTurn
+	 *            Whether it's black player's turn.
+	 */
+	public ArrayPosition(byte[][] state, byte[][][] chambers, boolean blackTurn) {
+		this.state = state;
+		this.chambers = chambers;
+		this.blackTurn = blackTurn;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see amazon.board.Position#get(int, int)
+	 */
+	@Override
+	public int get(int r, int c) {
+		return state[r][c];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see amazon.board.Position#getRowCount()
+	 */
+	@Override
+	public int getRowCount() {
+		return state.length;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see amazon.board.Position#getColumnCount()
+	 */
+	@Override
+	public int getColumnCount() {
+		return state[0].length;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see amazon.board.Position#getTurn()
+	 */
+	@Override
+	public boolean getTurn() {
+		return blackTurn;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see amazon.board.Position#getChamber(int, int, int)
+	 */
+	@Override
+	public int getChamber(int view, int r, int c) {
+		return chambers[view][r][c];
+	}
+}
@@ -10,14 +10,31 @@ import java.util.Arrays;
 // TODO check for win state.
 // TODO check for player turn.
 public class BoardArray implements BoardModel {
+	// Row and column step of each direction, ordered by row direction then
+	// column direction.
+	private static final int[] ROW_STEP = { -1, -1, -1, 0, 0, 1, 1, 1 };
+	private static final int[] COLUMN_STEP = { -1, 0, 1, -1, 1, -1, 0, 1 };
 	// Board representation.
 	private byte[][] board;
 	// Black or white turn.
 	private boolean blackTurn;
 	// Chambers representation. Will be null when un-calculated.
 	private byte[][][] chambers;
+	// Chamber regions, kept up to date after every move.
+	private ChamberMap chamberMap;
+	// Locations changed since chamber regions were last relabelled, and
+	// whether each location is among them.
+	private int[] changed;
+	private boolean[] isChanged;
+	private int changedCount;
 	// Time of current turn start.
 	private long turnTime;
+	// Zobrist hash of current position.
+	private long hash;
+	// Chamber representations before each performed move, for undoing.
+	private byte[][][][] chamberHistory;
+	// Number of performed moves that can be undone.
+	private int historySize;
 
 	// /**
 	// * Representation of Amazon board.
@@ -77,13 +94,62 @@ public class BoardArray implements BoardModel {
 		turnTime = System.currentTimeMillis();
 		// Un-calculated chamber representations.
 		chambers = null;
+		// Hash initial position.
+		hash = Zobrist.hash(this);
+		// Label initial chamber regions.
+		chamberMap = new ChamberMap(getRowCount(), getColumnCount());
+		chamberMap.recompute(board);
+		// No moves to undo.
+		chamberHistory = new byte[getRowCount() * getColumnCount()][][][];
+		historySize = 0;
+		// No locations changed since labelling.
+		changed = new int[getRowCount() * getColumnCount()];
+		isChanged = new boolean[getRowCount() * getColumnCount()];
+		changedCount = 0;
 	}
 
-	private BoardArray(byte[][] board, boolean blackTurn) {
+	/**
+	 * Representation of Amazon board in a given position.
+	 * 
+	 * @param state
+	 *            Board state to copy, as from {@link #getState()}.
+	 * @param blackTurn
+	 *            Whether it's black player's turn.
+	 */
+	public BoardArray(byte[][] state, boolean blackTurn) {
+		this.board = new byte[state.length][];
+		for (int i = 0; i < state.length; i++)
+			board[i] = state[i].clone();
+		this.blackTurn = blackTurn;
+		// Label chamber regions.
+		chamberMap = new ChamberMap(getRowCount(), getColumnCount());
+		chamberMap.recompute(board);
+		hash = Zobrist.hash(this);
+		// Reset turn time.
+		turnTime = System.currentTimeMillis();
+		// No moves to undo.
+		chamberHistory = new byte[getRowCount() * getColumnCount()][][][];
+		historySize = 0;
+		// No locations changed since labelling.
+		changed = new int[getRowCount() * getColumnCount()];
+		isChanged = new boolean[getRowCount() * getColumnCount()];
+		changedCount = 0;
+	}
+
+	private BoardArray(byte[][] board, boolean blackTurn, ChamberMap chamberMap) {
 		this.board = board;
 		this.blackTurn = blackTurn;
+		this.chamberMap = new ChamberMap(chamberMap);
+		hash = Zobrist.hash(this);
 		// Reset turn time.
 		turnTime = System.currentTimeMillis();
+		// No moves to undo.
+		chamberHistory = new byte[getRowCount() * getColumnCount()][][][];
+		historySize = 0;
+		// No locations changed since labelling.
+		changed = new int[getRowCount() * getColumnCount()];
+		isChanged = new boolean[getRowCount() * getColumnCount()];
+		changedCount = 0;
 	}
 
 	/*
@@ -92,116 +158,27 @@ public class BoardArray implements BoardModel {
 	 * @see amazon.board.BoardModel#findChambers()
 	 */
 	public byte[][][] getChambers() {
-		// Don't recalculate if not needed.
+		// Don't rewrite if not needed.
 		if (chambers != null)
 			return chambers;
-		byte[][][] both = getChambers(true, true);
-		byte[][][] black = getChambers(true, false);
-		byte[][][] white = getChambers(false, true);
-		for (int i = 0; i < getRowCount(); i++) {
-			for (int j = 0; j < getRowCount(); j++) {
-				both[1][i][j] = black[1][i][j];
-				both[2][i][j] = white[2][i][j];
-			}
-		}
-		// Save recalculated chambers.
-		chambers = both;
-		return both;
+		// Save chambers written from incrementally maintained regions.
+		syncChambers();
+		chambers = chamberMap.toArray();
+		return chambers;
 	}
 
-	/**
-	 * @param countBlack
-	 *            Count black queens, and treat them as not blocking spaces.
-	 * @param countWhite
-	 *            Count white queens, and treat them as not blocking spaces.
-	 * @return Specific chamber array.
-	 */
-	private byte[][][] getChambers(boolean countBlack, boolean countWhite) {
-		// Initialize chamber labels and count as 0.
-		byte[][][] chambers = new byte[3][getRowCount()][getColumnCount()];
-		// Initialize chamber queen counts at -1 for non-chambers.
-		for (int i = 0; i < getRowCount(); i++)
-			for (int j = 0; j < getColumnCount(); j++)
-				for (int k = 1; k <= 2; k++)
-					chambers[k][i][j] = -1;
-		// Checked board locations.
-		boolean[][] checked = new boolean[getRowCount()][getColumnCount()];
-		// Chamber label, reserving 0 for non-chambers.
-		byte label = 1;
-		// Scan through all locations.
-		for (int i = 0; i < getRowCount(); i++) {
-			for (int j = 0; j < getColumnCount(); j++) {
-				// Don't re-check locations, or arrow occupied locations.
-				if (checked[i][j] || board[i][j] == AB || board[i][j] == AW)
-					continue;
-				// List of locations to check.
-				ArrayList<int[]> check = new ArrayList<>();
-				// List of found chamber locations.
-				ArrayList<int[]> found = new ArrayList<>();
-				// Number of queens found in current chamber.
-				byte bCount = 0;
-				byte wCount = 0;
-				// Start at current scan location.
-				check.add(new int[] { i, j });
-				checked[i][j] = true;
-
-				// Check location and spread out if empty.
-				while (check.size() > 0) {
-					// Get location to check.
-					int[] l = check.remove(0);
-					// Get board value at check location.
-					byte value = board[l[0]][l[1]];
-
-					// Check if empty or queen.
-					if (value == E || (value == B && countBlack) || (value == W && countWhite)) {
-						// Add location to found list.
-						found.add(new int[] { l[0], l[1] });
-						// Increase count if queen is found.
-						if (value == B)
-							bCount++;
-						else if (value == W)
-							wCount++;
-
-						// Add neighbor locations if empty and unchecked.
-						for (int rN = -1; rN <= 1; rN++) {
-							// Check for border.
-							if (l[0] + rN < 0 || l[0] + rN >= getRowCount())
-								continue;
-							for (int cN = -1; cN <= 1; cN++) {
-								// Check for border.
-								if (l[1] + cN < 0 || l[1] + cN >= getColumnCount())
-									continue;
-								// Get board value at current check location.
-								byte currValue = board[l[0] + rN][l[1] + cN];
-								// Add current location to check list if empty
-								// or queen, and unchecked.
-								if ((currValue == E || (currValue == B && countBlack) || (currValue == W && countWhite))
-										&& !checked[l[0] + rN][l[1] + cN]) {
-									check.add(new int[] { l[0] + rN, l[1] + cN });
-									// Mark location as checked.
-									checked[l[0] + rN][l[1] + cN] = true;
-								}
-							}
-						}
-					}
-				}
-
-				// Add chamber info to array.
-				for (int f = 0; f < found.size(); f++) {
-					int r = found.get(f)[0];
-					int c = found.get(f)[1];
-					// Chamber labels.
-					chambers[0][r][c] = label;
-					// Black queen count.
-					chambers[1][r][c] = bCount;
-					// White queen count.
-					chambers[2][r][c] = wCount;
-				}
-				label++;
-			}
-		}
-		// Return board chamber representation array.
-		return chambers;
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.Position#getChamber(int, int, int)
+	 */
+	@Override
+	public int getChamber(int view, int r, int c) {
+		// Read written out chambers if any, such as restored by an undo.
+		if (chambers != null)
+			return chambers[view][r][c];
+		syncChambers();
+		return chamberMap.chamber(view, r * getColumnCount() + c);
 	}
 
 	/**
@@ -252,6 +229,9 @@ public class BoardArray implements BoardModel {
 		// location.
 		if (board[rA][cA] != E && !(rA == rQI && cA == cQI))
 			return false;
+		// Check if arrow location is final queen location.
+		if (rA == rQF && cA == cQF)
+			return false;
 		// Check arrow move path.
 		if (!validMove(rQF, cQF, rA, cA, rQI, cQI))
 			return false;
@@ -350,8 +330,12 @@ public class BoardArray implements BoardModel {
 	 * @see amazon.board.BoardModel#checkFinished()
 	 */
 	public boolean checkFinished() {
-		// Calculate chambers if needed.
-		byte[][][] chambers = getChambers();
+		// Check written out chambers if any, otherwise the regions, so
+		// chambers aren't written out just to check.
+		if (chambers == null) {
+			syncChambers();
+			return chamberMap.finished();
+		}
 		// Check if any chamber is occupied by both players.
 		for (int i = 0; i < getRowCount(); i++)
 			for (int j = 0; j < getColumnCount(); j++)
@@ -387,7 +371,13 @@ public class BoardArray implements BoardModel {
 		board[rQI][cQI] = E;
 		// Place arrow.
 		board[rA][cA] = blackTurn ? AB : AW;
-		// Make chamber representation un-calculated after move.
+		// Update hash for moved queen, placed arrow, and changed turn.
+		updateHash(rQI, cQI, rQF, cQF, rA, cA);
+		// Mark changed locations for relabelling chamber regions.
+		updateChambers(rQI, cQI, rQF, cQF, rA, cA);
+		// Save chamber representation for undo, and make it un-calculated
+		// after move.
+		chamberHistory[historySize++] = chambers;
 		chambers = null;
 		// Change player turn;
 		blackTurn = !blackTurn;
@@ -397,6 +387,109 @@ public class BoardArray implements BoardModel {
 		return true;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#move(int)
+	 */
+	@Override
+	public boolean move(int move) {
+		return move(Move.rQI(move), Move.cQI(move), Move.rQF(move), Move.cQF(move), Move.rA(move), Move.cA(move));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#undo(int)
+	 */
+	@Override
+	public void undo(int move) {
+		// Check if there is no move to undo.
+		if (historySize == 0)
+			throw new IllegalStateException("No move to undo!");
+		// Change player turn back.
+		blackTurn = !blackTurn;
+		// Update hash for moved queen, removed arrow, and changed turn.
+		updateHash(Move.rQI(move), Move.cQI(move), Move.rQF(move), Move.cQF(move), Move.rA(move), Move.cA(move));
+		// Remove arrow.
+		board[Move.rA(move)][Move.cA(move)] = E;
+		// Move queen back to initial location.
+		board[Move.rQI(move)][Move.cQI(move)] = board[Move.rQF(move)][Move.cQF(move)];
+		board[Move.rQF(move)][Move.cQF(move)] = E;
+		// Mark changed locations for relabelling chamber regions.
+		updateChambers(Move.rQI(move), Move.cQI(move), Move.rQF(move), Move.cQF(move), Move.rA(move), Move.cA(move));
+		// Restore chamber representation from before move.
+		chambers = chamberHistory[--historySize];
+		chamberHistory[historySize] = null;
+	}
+
+	/**
+	 * Toggle the hash keys of the queen, arrow, and turn changed by a move,
+	 * which both performs and undoes it. Assumes it's the moving player's
+	 * turn, and the queen is at its final location.
+	 * 
+	 * @param rQI
+	 *            Initial queen row index.
+	 * @param cQI
+	 *            Initial queen column index.
+	 * @param rQF
+	 *            Final queen row index.
+	 * @param cQF
+	 *            Final queen column index.
+	 * @param rA
+	 *            Arrow row index.
+	 * @param cA
+	 *            Arrow column index.
+	 */
+	private void updateHash(int rQI, int cQI, int rQF, int cQF, int rA, int cA) {
+		int columns = getColumnCount();
+		byte queen = board[rQF][cQF];
+		hash ^= Zobrist.key(queen, rQI * columns + cQI) ^ Zobrist.key(queen, rQF * columns + cQF)
+				^ Zobrist.key(blackTurn ? AB : AW, rA * columns + cA) ^ Zobrist.BLACK_TURN;
+	}
+
+	/**
+	 * Mark the locations changed by a move, so the chamber regions around
+	 * them are relabelled when next needed. Moves that are undone before
+	 * chambers are needed only cost their marking.
+	 * 
+	 * @param rQI
+	 *            Initial queen row index.
+	 * @param cQI
+	 *            Initial queen column index.
+	 * @param rQF
+	 *            Final queen row index.
+	 * @param cQF
+	 *            Final queen column index.
+	 * @param rA
+	 *            Arrow row index.
+	 * @param cA
+	 *            Arrow column index.
+	 */
+	private void updateChambers(int rQI, int cQI, int rQF, int cQF, int rA, int cA) {
+		markChanged(rQI * getColumnCount() + cQI);
+		markChanged(rQF * getColumnCount() + cQF);
+		markChanged(rA * getColumnCount() + cA);
+	}
+
+	/** Mark a location index as changed since chambers were labelled. */
+	private void markChanged(int s) {
+		if (isChanged[s])
+			return;
+		isChanged[s] = true;
+		changed[changedCount++] = s;
+	}
+
+	/** Relabel chamber regions around all locations changed since last time. */
+	private void syncChambers() {
+		if (changedCount == 0)
+			return;
+		chamberMap.update(board, changed, changedCount);
+		for (int i = 0; i < changedCount; i++)
+			isChanged[changed[i]] = false;
+		changedCount = 0;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -404,64 +497,288 @@ public class BoardArray implements BoardModel {
 	 */
 	@Override
 	public ArrayList<int[]> possibleMoves() {
-		ArrayList<int[]> moves = new ArrayList<>();
-		// Location of each queen.
-		int[][] queens = getQueens(blackTurn);
-		// For each queen.
-		for (int q = 0; q < 4; q++) {
-			// Initial queen position.
-			int rQI = queens[q][0];
-			int cQI = queens[q][1];
-			// Row direction.
-			for (int rD = -1; rD <= 1; rD++) {
-				// Column direction.
-				for (int cD = -1; cD <= 1; cD++) {
-					// Continue if no direction.
-					if (rD == 0 && cD == 0)
-						continue;
-					// Check all possible distances.
-					for (int dist = 1; dist < Math.max(getRowCount(), getColumnCount()); dist++) {
-						// Calculate final queen position.
-						int rQF = rQI + rD * dist;
-						int cQF = cQI + cD * dist;
-						// Check if move is off board.
-						if (rQF < 0 || rQF >= getRowCount() || cQF < 0 || cQF >= getColumnCount())
-							break;
-						// Check if move is not empty.
-						if (board[rQF][cQF] != E)
-							break;
-						// Arrow row direction.
-						for (int rAD = -1; rAD <= 1; rAD++) {
-							// Arrow column direction.
-							for (int cAD = -1; cAD <= 1; cAD++) {
-								// Continue if no direction.
-								if (rAD == 0 && cAD == 0)
-									continue;
-
-								// Check all possible arrow distances.
-								for (int aDist = 1; aDist < Math.max(getRowCount(), getColumnCount()); aDist++) {
-									// Calculate arrow position.
-									int rA = rQF + rAD * aDist;
-									int cA = cQF + cAD * aDist;
-									// Check if arrow move is off board.
-									if (rA < 0 || rA >= getRowCount() || cA < 0 || cA >= getColumnCount())
-										break;
-									// Check if arrow move is not empty, or
-									// initial position.
-									if (board[rA][cA] != E && (rA != rQI || cA != cQI))
-										break;
-									// Add move to list.
-									int[] move = { rQI, cQI, rQF, cQF, rA, cA };
-									moves.add(move);
+		int[] packed = new int[Move.MAX_MOVES];
+		int count = possibleMoves(packed);
+		ArrayList<int[]> moves = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			moves.add(Move.toArray(packed[i]));
+		return moves;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#possibleMoves(int[])
+	 */
+	@Override
+	public int possibleMoves(int[] moves) {
+		return possibleMoves(moves, false);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#possibleMoves(int[], boolean)
+	 */
+	@Override
+	public int possibleMoves(int[] moves, boolean filterOwned) {
+		// Chamber regions are needed up to date to find owned queens.
+		if (filterOwned)
+			syncChambers();
+		int count = 0;
+		byte queen = blackTurn ? B : W;
+		int rows = getRowCount();
+		int columns = getColumnCount();
+		int maxDist = Math.max(rows, columns);
+		// For each of current player's queens, in row major order.
+		for (int rQI = 0; rQI < rows; rQI++) {
+			for (int cQI = 0; cQI < columns; cQI++) {
+				if (board[rQI][cQI] != queen || (filterOwned && chamberMap.owned(rQI * columns + cQI)))
+					continue;
+				// Row direction.
+				for (int rD = -1; rD <= 1; rD++) {
+					// Column direction.
+					for (int cD = -1; cD <= 1; cD++) {
+						// Continue if no direction.
+						if (rD == 0 && cD == 0)
+							continue;
+						// Check all possible distances.
+						for (int dist = 1; dist < maxDist; dist++) {
+							// Calculate final queen position.
+							int rQF = rQI + rD * dist;
+							int cQF = cQI + cD * dist;
+							// Check if move is off board.
+							if (rQF < 0 || rQF >= rows || cQF < 0 || cQF >= columns)
+								break;
+							// Check if move is not empty.
+							if (board[rQF][cQF] != E)
+								break;
+							// Packed initial and final queen locations.
+							int queenMove = Move.encode(rQI, cQI, rQF, cQF, 0, 0);
+							// Arrow row direction.
+							for (int rAD = -1; rAD <= 1; rAD++) {
+								// Arrow column direction.
+								for (int cAD = -1; cAD <= 1; cAD++) {
+									// Continue if no direction.
+									if (rAD == 0 && cAD == 0)
+										continue;
+									// Check all possible arrow distances.
+									for (int aDist = 1; aDist < maxDist; aDist++) {
+										// Calculate arrow position.
+										int rA = rQF + rAD * aDist;
+										int cA = cQF + cAD * aDist;
+										// Check if arrow move is off board.
+										if (rA < 0 || rA >= rows || cA < 0 || cA >= columns)
+											break;
+										// Check if arrow move is not empty, or
+										// initial position.
+										if (board[rA][cA] != E && (rA != rQI || cA != cQI))
+											break;
+										// Add move to buffer.
+										moves[count++] = queenMove | Move.encode(0, 0, 0, 0, rA, cA);
+									}
 								}
 							}
 						}
+					}
+				}
+			}
+		}
+		// Move owned queens if nothing else can move.
+		if (count == 0 && filterOwned)
+			return possibleMoves(moves, false);
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#countMoves(boolean)
+	 */
+	@Override
+	public int countMoves(boolean black) {
+		int count = 0;
+		byte queen = black ? B : W;
+		for (int i = 0; i < getRowCount(); i++)
+			for (int j = 0; j < getColumnCount(); j++)
+				if (board[i][j] == queen)
+					count += countMoves(i, j);
+		return count;
+	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#countMoves(int, int)
+	 */
+	@Override
+	public int countMoves(int rQI, int cQI) {
+		if (rQI < 0 || rQI >= getRowCount() || cQI < 0 || cQI >= getColumnCount()
+				|| (board[rQI][cQI] != B && board[rQI][cQI] != W))
+			return 0;
+		int count = 0;
+		for (int dir = 0; dir < 8; dir++) {
+			// Check all possible distances.
+			for (int dist = 1;; dist++) {
+				int rQF = rQI + ROW_STEP[dir] * dist;
+				int cQF = cQI + COLUMN_STEP[dir] * dist;
+				if (rQF < 0 || rQF >= getRowCount() || cQF < 0 || cQF >= getColumnCount() || board[rQF][cQF] != E)
+					break;
+				// Add arrow ray lengths from final queen location, which may
+				// pass through initial queen location.
+				for (int arrowDir = 0; arrowDir < 8; arrowDir++) {
+					for (int arrowDist = 1;; arrowDist++) {
+						int rA = rQF + ROW_STEP[arrowDir] * arrowDist;
+						int cA = cQF + COLUMN_STEP[arrowDir] * arrowDist;
+						if (rA < 0 || rA >= getRowCount() || cA < 0 || cA >= getColumnCount()
+								|| (board[rA][cA] != E && (rA != rQI || cA != cQI)))
+							break;
+						count++;
 					}
 				}
 			}
 		}
-		return moves;
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#hasMoves(boolean)
+	 */
+	@Override
+	public boolean hasMoves(boolean black) {
+		byte queen = black ? B : W;
+		for (int i = 0; i < getRowCount(); i++)
+			for (int j = 0; j < getColumnCount(); j++) {
+				if (board[i][j] != queen)
+					continue;
+				for (int dir = 0; dir < 8; dir++) {
+					int r = i + ROW_STEP[dir];
+					int c = j + COLUMN_STEP[dir];
+					if (r >= 0 && r < getRowCount() && c >= 0 && c < getColumnCount() && board[r][c] == E)
+						return true;
+				}
+			}
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#moveIterator()
+	 */
+	@Override
+	public MoveIterator moveIterator() {
+		return new ArrayMoveIterator();
+	}
+
+	/**
+	 * Staged move iterator walking the board array, in the same direction and
+	 * distance order as {@link BoardArray#possibleMoves(int[])}.
+	 */
+	private class ArrayMoveIterator implements MoveIterator {
+		// Current player's queen value.
+		private byte queen;
+		// Initial queen location index, or location count once exhausted.
+		private int square;
+		// Queen move direction and distance.
+		private int dir;
+		private int dist;
+		// Arrow direction and distance.
+		private int arrowDir;
+		private int arrowDist;
+		// Whether there is a current queen move.
+		private boolean hasQueen;
+		// Current packed move.
+		private int move;
+
+		ArrayMoveIterator() {
+			reset();
+		}
+
+		@Override
+		public void reset() {
+			queen = blackTurn ? B : W;
+			square = -1;
+			dir = 8;
+			hasQueen = false;
+		}
+
+		@Override
+		public boolean nextQueen() {
+			int rows = getRowCount();
+			int columns = getColumnCount();
+			while (true) {
+				// Find next queen once all directions are exhausted.
+				if (dir == 8) {
+					do
+						square++;
+					while (square < rows * columns && board[square / columns][square % columns] != queen);
+					if (square >= rows * columns) {
+						hasQueen = false;
+						return false;
+					}
+					dir = 0;
+					dist = 0;
+				}
+				int rQI = square / columns;
+				int cQI = square % columns;
+				// Calculate final queen position.
+				dist++;
+				int rQF = rQI + ROW_STEP[dir] * dist;
+				int cQF = cQI + COLUMN_STEP[dir] * dist;
+				// Change direction if move is off board or not empty.
+				if (rQF < 0 || rQF >= rows || cQF < 0 || cQF >= columns || board[rQF][cQF] != E) {
+					dir++;
+					dist = 0;
+					continue;
+				}
+				move = Move.encode(rQI, cQI, rQF, cQF, 0, 0);
+				arrowDir = 0;
+				arrowDist = 0;
+				hasQueen = true;
+				return true;
+			}
+		}
+
+		@Override
+		public boolean nextArrow() {
+			if (!hasQueen)
+				return false;
+			int rQF = Move.rQF(move);
+			int cQF = Move.cQF(move);
+			while (arrowDir < 8) {
+				// Calculate arrow position.
+				arrowDist++;
+				int rA = rQF + ROW_STEP[arrowDir] * arrowDist;
+				int cA = cQF + COLUMN_STEP[arrowDir] * arrowDist;
+				// Change direction if arrow move is off board, or not empty
+				// or initial position.
+				if (rA < 0 || rA >= getRowCount() || cA < 0 || cA >= getColumnCount()
+						|| (board[rA][cA] != E && (rA != Move.rQI(move) || cA != Move.cQI(move)))) {
+					arrowDir++;
+					arrowDist = 0;
+					continue;
+				}
+				move = (move & 0xFFFF) | Move.encode(0, 0, 0, 0, rA, cA);
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public boolean next() {
+			while (!nextArrow())
+				if (!nextQueen())
+					return false;
+			return true;
+		}
+
+		@Override
+		public int move() {
+			return move;
+		}
 	}
 
 	/*
@@ -538,28 +855,14 @@ public class BoardArray implements BoardModel {
 		return System.currentTimeMillis() - turnTime;
 	}
 
-	/**
-	 * Get the locations of a given players queens.
+	/*
+	 * (non-Javadoc)
 	 * 
-	 * @param white
-	 *            Find white or black queens.
-	 * @return The location of each queen; first index queen, second index row
-	 *         or column.
-	 */
-	private int[][] getQueens(boolean black) {
-		// Location of each queen.
-		int[][] queenLoc = new int[4][2];
-		// Current queen index.
-		int index = 0;
-		// Find current player's queen locations.
-		for (int i = 0; i < getRowCount(); i++)
-			for (int j = 0; j < getColumnCount(); j++)
-				if (board[i][j] == (black ? B : W)) {
-					queenLoc[index][0] = i;
-					queenLoc[index][1] = j;
-					index++;
-				}
-		return queenLoc;
+	 * @see amazon.board.BoardModel#hash()
+	 */
+	@Override
+	public long hash() {
+		return hash;
 	}
 
 	/*
@@ -568,7 +871,8 @@ public class BoardArray implements BoardModel {
 	 * @see java.lang.Object#clone()
 	 */
 	public BoardModel clone() {
-		return new BoardArray(getState(), blackTurn);
+		syncChambers();
+		return new BoardArray(getState(), blackTurn, chamberMap);
 	}
 
 	/** Test initial board layout. */
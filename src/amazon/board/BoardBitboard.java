@@ -0,0 +1,978 @@
+package amazon.board;
+
+import java.util.ArrayList;
+
+/**
+ * Bitboard board model of the "Game of Amazons", packing the 100 board
+ * locations into 128 bit occupancy sets and generating sliding moves with set
+ * operations. Each set is held as a low half, for locations 0 to 63, and a
+ * high half, for locations 64 to 99, where a location index is the row times
+ * the column count plus the column.
+ */
+public class BoardBitboard implements BoardModel {
+	// Board dimensions.
+	private static final int ROWS = 10;
+	private static final int COLUMNS = 10;
+	private static final int SQUARES = ROWS * COLUMNS;
+	// Valid location bits of the high half.
+	private static final long BOARD_HI = (1L << (SQUARES - 64)) - 1;
+
+	// Location index offset of each direction, ordered by row direction then
+	// column direction, from -1 to 1.
+	private static final int[] OFFSET = new int[8];
+	// Masks removing locations wrapped around a board edge after a shift.
+	private static final long[] MASK_LO = new long[8];
+	private static final long[] MASK_HI = new long[8];
+	// Locations strictly between two locations, indexed by from times
+	// location count plus to.
+	private static final long[] BETWEEN_LO = new long[SQUARES * SQUARES];
+	private static final long[] BETWEEN_HI = new long[SQUARES * SQUARES];
+	// Whether two locations share a row, column, or diagonal.
+	private static final boolean[] ALIGNED = new boolean[SQUARES * SQUARES];
+	// Packed row and column byte of each location, as used by Move.
+	private static final int[] PACKED = new int[SQUARES];
+
+	static {
+		for (int s = 0; s < SQUARES; s++)
+			PACKED[s] = Move.encode(s / COLUMNS, s % COLUMNS, 0, 0, 0, 0);
+		int d = 0;
+		for (int rD = -1; rD <= 1; rD++) {
+			for (int cD = -1; cD <= 1; cD++) {
+				if (rD == 0 && cD == 0)
+					continue;
+				OFFSET[d] = rD * COLUMNS + cD;
+				// Moving right must not land in first column, and moving left
+				// must not land in last column.
+				long lo = ~0L;
+				long hi = BOARD_HI;
+				for (int s = 0; s < SQUARES; s++) {
+					int c = s % COLUMNS;
+					if ((cD == 1 && c == 0) || (cD == -1 && c == COLUMNS - 1)) {
+						lo &= ~bitLo(s);
+						hi &= ~bitHi(s);
+					}
+				}
+				MASK_LO[d] = lo;
+				MASK_HI[d] = hi;
+				// Walk each ray, accumulating the locations passed over.
+				for (int s = 0; s < SQUARES; s++) {
+					long pathLo = 0;
+					long pathHi = 0;
+					for (int dist = 1;; dist++) {
+						int r = s / COLUMNS + rD * dist;
+						int c = s % COLUMNS + cD * dist;
+						if (r < 0 || r >= ROWS || c < 0 || c >= COLUMNS)
+							break;
+						int t = r * COLUMNS + c;
+						BETWEEN_LO[s * SQUARES + t] = pathLo;
+						BETWEEN_HI[s * SQUARES + t] = pathHi;
+						ALIGNED[s * SQUARES + t] = true;
+						pathLo |= bitLo(t);
+						pathHi |= bitHi(t);
+					}
+				}
+				d++;
+			}
+		}
+	}
+
+	// Black queen locations.
+	private long blackLo;
+	private long blackHi;
+	// White queen locations.
+	private long whiteLo;
+	private long whiteHi;
+	// Arrow locations, of either color.
+	private long arrowLo;
+	private long arrowHi;
+	// Black arrow locations, a subset of arrow locations.
+	private long blackArrowLo;
+	private long blackArrowHi;
+	// Black or white turn.
+	private boolean blackTurn;
+	// Chambers representation. Will be null when un-calculated.
+	private byte[][][] chambers;
+	// Time of current turn start.
+	private long turnTime;
+	// Zobrist hash of current position.
+	private long hash;
+	// Chamber representations before each performed move, for undoing.
+	private byte[][][][] chamberHistory = new byte[SQUARES][][][];
+	// Number of performed moves that can be undone.
+	private int historySize;
+
+	/**
+	 * Bitboard representation of Amazon board.
+	 */
+	public BoardBitboard() {
+		reinitialize();
+	}
+
+	/**
+	 * Bitboard representation of Amazon board in a given position.
+	 * 
+	 * @param state
+	 *            Board state of 10 rows and columns, as from
+	 *            {@link #getState()}.
+	 * @param blackTurn
+	 *            Whether it's black player's turn.
+	 */
+	public BoardBitboard(byte[][] state, boolean blackTurn) {
+		if (state.length != ROWS || state[0].length != COLUMNS)
+			throw new IllegalArgumentException("Bitboard must be " + ROWS + " by " + COLUMNS + "!");
+		reinitialize();
+		blackLo = blackHi = whiteLo = whiteHi = 0;
+		for (int s = 0; s < SQUARES; s++) {
+			byte value = state[s / COLUMNS][s % COLUMNS];
+			if (value == B) {
+				blackLo |= bitLo(s);
+				blackHi |= bitHi(s);
+			} else if (value == W) {
+				whiteLo |= bitLo(s);
+				whiteHi |= bitHi(s);
+			} else if (value == AB || value == AW) {
+				arrowLo |= bitLo(s);
+				arrowHi |= bitHi(s);
+				if (value == AB) {
+					blackArrowLo |= bitLo(s);
+					blackArrowHi |= bitHi(s);
+				}
+			}
+		}
+		this.blackTurn = blackTurn;
+		hash = Zobrist.hash(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#reinitialize()
+	 */
+	public void reinitialize() {
+		// Add initial queens.
+		blackLo = bitLo(60) | bitLo(69) | bitLo(93) | bitLo(96);
+		blackHi = bitHi(60) | bitHi(69) | bitHi(93) | bitHi(96);
+		whiteLo = bitLo(3) | bitLo(6) | bitLo(30) | bitLo(39);
+		whiteHi = bitHi(3) | bitHi(6) | bitHi(30) | bitHi(39);
+		// No arrows.
+		arrowLo = arrowHi = 0;
+		blackArrowLo = blackArrowHi = 0;
+		// White goes first.
+		blackTurn = false;
+		// Reset turn time.
+		turnTime = System.currentTimeMillis();
+		// Un-calculated chamber representations.
+		chambers = null;
+		// No moves to undo.
+		historySize = 0;
+		// Hash initial position.
+		hash = Zobrist.hash(this);
+	}
+
+	/** @return Low half bit of a given location. */
+	private static long bitLo(int s) {
+		return s < 64 ? 1L << s : 0;
+	}
+
+	/** @return High half bit of a given location. */
+	private static long bitHi(int s) {
+		return s >= 64 ? 1L << (s - 64) : 0;
+	}
+
+	/** @return Whether a given location is in a set. */
+	private static boolean isSet(long lo, long hi, int s) {
+		return s < 64 ? (lo >>> s & 1) != 0 : (hi >>> (s - 64) & 1) != 0;
+	}
+
+	/** @return Index of the lowest location in a non-empty set. */
+	private static int lowest(long lo, long hi) {
+		return lo != 0 ? Long.numberOfTrailingZeros(lo) : 64 + Long.numberOfTrailingZeros(hi);
+	}
+
+	/** @return Low half of a set shifted one step in a given direction. */
+	private static long shiftLo(long lo, long hi, int d) {
+		int off = OFFSET[d];
+		long r = off > 0 ? lo << off : (lo >>> -off) | (hi << (64 + off));
+		return r & MASK_LO[d];
+	}
+
+	/** @return High half of a set shifted one step in a given direction. */
+	private static long shiftHi(long lo, long hi, int d) {
+		int off = OFFSET[d];
+		long r = off > 0 ? (hi << off) | (lo >>> (64 - off)) : hi >>> -off;
+		return r & MASK_HI[d];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#validTurn(int, int, int, int, int, int)
+	 */
+	@Override
+	public boolean validTurn(int rQI, int cQI, int rQF, int cQF, int rA, int cA) {
+		// Check if any location is off board.
+		if (!onBoard(rQI, cQI) || !onBoard(rQF, cQF) || !onBoard(rA, cA))
+			return false;
+		int f = rQI * COLUMNS + cQI;
+		int t = rQF * COLUMNS + cQF;
+		int a = rA * COLUMNS + cA;
+		// Check if initial location isn't current player's queen.
+		if (!(blackTurn ? isSet(blackLo, blackHi, f) : isSet(whiteLo, whiteHi, f)))
+			return false;
+		long occLo = blackLo | whiteLo | arrowLo;
+		long occHi = blackHi | whiteHi | arrowHi;
+		// Check queen destination and path.
+		if (isSet(occLo, occHi, t) || !ALIGNED[f * SQUARES + t] || (BETWEEN_LO[f * SQUARES + t] & occLo) != 0
+				|| (BETWEEN_HI[f * SQUARES + t] & occHi) != 0)
+			return false;
+		// Occupancy after queen has moved.
+		occLo = (occLo & ~bitLo(f)) | bitLo(t);
+		occHi = (occHi & ~bitHi(f)) | bitHi(t);
+		// Check arrow destination and path.
+		if (isSet(occLo, occHi, a) || !ALIGNED[t * SQUARES + a] || (BETWEEN_LO[t * SQUARES + a] & occLo) != 0
+				|| (BETWEEN_HI[t * SQUARES + a] & occHi) != 0)
+			return false;
+		return true;
+	}
+
+	/** @return Whether a given location is on the board. */
+	private static boolean onBoard(int r, int c) {
+		return r >= 0 && r < ROWS && c >= 0 && c < COLUMNS;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#move(int, int, int, int, int, int)
+	 */
+	@Override
+	public boolean move(int rQI, int cQI, int rQF, int cQF, int rA, int cA) {
+		// Check if move is invalid.
+		if (!validTurn(rQI, cQI, rQF, cQF, rA, cA))
+			return false;
+		int f = rQI * COLUMNS + cQI;
+		int t = rQF * COLUMNS + cQF;
+		int a = rA * COLUMNS + cA;
+		// Move current player's queen and place arrow.
+		if (blackTurn) {
+			blackLo = (blackLo & ~bitLo(f)) | bitLo(t);
+			blackHi = (blackHi & ~bitHi(f)) | bitHi(t);
+			blackArrowLo |= bitLo(a);
+			blackArrowHi |= bitHi(a);
+		} else {
+			whiteLo = (whiteLo & ~bitLo(f)) | bitLo(t);
+			whiteHi = (whiteHi & ~bitHi(f)) | bitHi(t);
+		}
+		arrowLo |= bitLo(a);
+		arrowHi |= bitHi(a);
+		// Update hash for moved queen, placed arrow, and changed turn.
+		updateHash(f, t, a);
+		// Save chamber representation for undo, and make it un-calculated
+		// after move.
+		chamberHistory[historySize++] = chambers;
+		chambers = null;
+		// Change player turn;
+		blackTurn = !blackTurn;
+		// Reset turn time.
+		turnTime = System.currentTimeMillis();
+		// Succeeded.
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#move(int)
+	 */
+	@Override
+	public boolean move(int move) {
+		return move(Move.rQI(move), Move.cQI(move), Move.rQF(move), Move.cQF(move), Move.rA(move), Move.cA(move));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#undo(int)
+	 */
+	@Override
+	public void undo(int move) {
+		// Check if there is no move to undo.
+		if (historySize == 0)
+			throw new IllegalStateException("No move to undo!");
+		int f = Move.rQI(move) * COLUMNS + Move.cQI(move);
+		int t = Move.rQF(move) * COLUMNS + Move.cQF(move);
+		int a = Move.rA(move) * COLUMNS + Move.cA(move);
+		// Change player turn back.
+		blackTurn = !blackTurn;
+		// Update hash for moved queen, removed arrow, and changed turn.
+		updateHash(f, t, a);
+		// Remove arrow.
+		arrowLo &= ~bitLo(a);
+		arrowHi &= ~bitHi(a);
+		blackArrowLo &= ~bitLo(a);
+		blackArrowHi &= ~bitHi(a);
+		// Move queen back to initial location.
+		if (blackTurn) {
+			blackLo = (blackLo & ~bitLo(t)) | bitLo(f);
+			blackHi = (blackHi & ~bitHi(t)) | bitHi(f);
+		} else {
+			whiteLo = (whiteLo & ~bitLo(t)) | bitLo(f);
+			whiteHi = (whiteHi & ~bitHi(t)) | bitHi(f);
+		}
+		// Restore chamber representation from before move.
+		chambers = chamberHistory[--historySize];
+		chamberHistory[historySize] = null;
+	}
+
+	/**
+	 * Toggle the hash keys of the queen, arrow, and turn changed by a move,
+	 * which both performs and undoes it. Assumes it's the moving player's
+	 * turn.
+	 * 
+	 * @param f
+	 *            Initial queen location index.
+	 * @param t
+	 *            Final queen location index.
+	 * @param a
+	 *            Arrow location index.
+	 */
+	private void updateHash(int f, int t, int a) {
+		byte queen = blackTurn ? B : W;
+		hash ^= Zobrist.key(queen, f) ^ Zobrist.key(queen, t) ^ Zobrist.key(blackTurn ? AB : AW, a)
+				^ Zobrist.BLACK_TURN;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#possibleMoves()
+	 */
+	@Override
+	public ArrayList<int[]> possibleMoves() {
+		int[] packed = new int[Move.MAX_MOVES];
+		int count = possibleMoves(packed);
+		ArrayList<int[]> moves = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			moves.add(Move.toArray(packed[i]));
+		return moves;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#possibleMoves(int[])
+	 */
+	@Override
+	public int possibleMoves(int[] moves) {
+		return possibleMoves(moves, false);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#possibleMoves(int[], boolean)
+	 */
+	@Override
+	public int possibleMoves(int[] moves, boolean filterOwned) {
+		int count = 0;
+		long emptyLo = ~(blackLo | whiteLo | arrowLo);
+		long emptyHi = ~(blackHi | whiteHi | arrowHi) & BOARD_HI;
+		// Current player's queens, in row major order.
+		long queensLo = blackTurn ? blackLo : whiteLo;
+		long queensHi = blackTurn ? blackHi : whiteHi;
+		while ((queensLo | queensHi) != 0) {
+			int f = lowest(queensLo, queensHi);
+			queensLo &= ~bitLo(f);
+			queensHi &= ~bitHi(f);
+			if (filterOwned && owned(f))
+				continue;
+			for (int d = 0; d < 8; d++) {
+				// Slide queen one step at a time over empty locations.
+				long qLo = bitLo(f);
+				long qHi = bitHi(f);
+				while (true) {
+					long nLo = shiftLo(qLo, qHi, d) & emptyLo;
+					long nHi = shiftHi(qLo, qHi, d) & emptyHi;
+					if ((nLo | nHi) == 0)
+						break;
+					qLo = nLo;
+					qHi = nHi;
+					// Packed initial and final queen locations.
+					int queenMove = PACKED[f] | PACKED[lowest(qLo, qHi)] << 8;
+					// Arrow may pass through vacated initial location, but
+					// not through queen's final location.
+					long aEmptyLo = (emptyLo | bitLo(f)) & ~qLo;
+					long aEmptyHi = (emptyHi | bitHi(f)) & ~qHi;
+					for (int aD = 0; aD < 8; aD++) {
+						long aLo = qLo;
+						long aHi = qHi;
+						while (true) {
+							long mLo = shiftLo(aLo, aHi, aD) & aEmptyLo;
+							long mHi = shiftHi(aLo, aHi, aD) & aEmptyHi;
+							if ((mLo | mHi) == 0)
+								break;
+							aLo = mLo;
+							aHi = mHi;
+							// Add move to buffer.
+							moves[count++] = queenMove | PACKED[lowest(aLo, aHi)] << 16;
+						}
+					}
+				}
+			}
+		}
+		// Move owned queens if nothing else can move.
+		if (count == 0 && filterOwned)
+			return possibleMoves(moves, false);
+		return count;
+	}
+
+	/**
+	 * @param f
+	 *            Location of a queen.
+	 * @return Whether the queen's chamber holds no opposing queens.
+	 */
+	private boolean owned(int f) {
+		long openLo = ~arrowLo;
+		long openHi = ~arrowHi & BOARD_HI;
+		long opposingLo = isSet(blackLo, blackHi, f) ? whiteLo : blackLo;
+		long opposingHi = isSet(blackLo, blackHi, f) ? whiteHi : blackHi;
+		// Grow chamber from the queen until it stops changing, or reaches an
+		// opposing queen.
+		long cLo = bitLo(f);
+		long cHi = bitHi(f);
+		while (true) {
+			long gLo = cLo;
+			long gHi = cHi;
+			for (int d = 0; d < 8; d++) {
+				gLo |= shiftLo(cLo, cHi, d);
+				gHi |= shiftHi(cLo, cHi, d);
+			}
+			gLo &= openLo;
+			gHi &= openHi;
+			if (((gLo & opposingLo) | (gHi & opposingHi)) != 0)
+				return false;
+			if (gLo == cLo && gHi == cHi)
+				return true;
+			cLo = gLo;
+			cHi = gHi;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#countMoves(boolean)
+	 */
+	@Override
+	public int countMoves(boolean black) {
+		int count = 0;
+		long queensLo = black ? blackLo : whiteLo;
+		long queensHi = black ? blackHi : whiteHi;
+		while ((queensLo | queensHi) != 0) {
+			int f = lowest(queensLo, queensHi);
+			queensLo &= ~bitLo(f);
+			queensHi &= ~bitHi(f);
+			count += countQueenMoves(f);
+		}
+		return count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#countMoves(int, int)
+	 */
+	@Override
+	public int countMoves(int r, int c) {
+		int f = r * COLUMNS + c;
+		if (!onBoard(r, c) || !isSet(blackLo | whiteLo, blackHi | whiteHi, f))
+			return 0;
+		return countQueenMoves(f);
+	}
+
+	/**
+	 * Count the possible moves of the queen at a given location, as the sum of
+	 * arrow ray lengths from each of its final locations.
+	 * 
+	 * @param f
+	 *            Queen location index.
+	 * @return Number of possible moves.
+	 */
+	private int countQueenMoves(int f) {
+		int count = 0;
+		long emptyLo = ~(blackLo | whiteLo | arrowLo);
+		long emptyHi = ~(blackHi | whiteHi | arrowHi) & BOARD_HI;
+		for (int d = 0; d < 8; d++) {
+			long qLo = bitLo(f);
+			long qHi = bitHi(f);
+			while (true) {
+				long nLo = shiftLo(qLo, qHi, d) & emptyLo;
+				long nHi = shiftHi(qLo, qHi, d) & emptyHi;
+				if ((nLo | nHi) == 0)
+					break;
+				qLo = nLo;
+				qHi = nHi;
+				// Arrow may pass through vacated initial location.
+				count += rayLength(qLo, qHi, (emptyLo | bitLo(f)) & ~qLo, (emptyHi | bitHi(f)) & ~qHi);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return Total length of the rays from a location, in every direction,
+	 *         over a given set of open locations.
+	 */
+	private static int rayLength(long sLo, long sHi, long openLo, long openHi) {
+		int length = 0;
+		for (int d = 0; d < 8; d++) {
+			long aLo = sLo;
+			long aHi = sHi;
+			while (true) {
+				long mLo = shiftLo(aLo, aHi, d) & openLo;
+				long mHi = shiftHi(aLo, aHi, d) & openHi;
+				if ((mLo | mHi) == 0)
+					break;
+				aLo = mLo;
+				aHi = mHi;
+				length++;
+			}
+		}
+		return length;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#hasMoves(boolean)
+	 */
+	@Override
+	public boolean hasMoves(boolean black) {
+		long queensLo = black ? blackLo : whiteLo;
+		long queensHi = black ? blackHi : whiteHi;
+		long emptyLo = ~(blackLo | whiteLo | arrowLo);
+		long emptyHi = ~(blackHi | whiteHi | arrowHi) & BOARD_HI;
+		// Check if any queen has an empty neighbor.
+		for (int d = 0; d < 8; d++)
+			if ((shiftLo(queensLo, queensHi, d) & emptyLo) != 0 || (shiftHi(queensLo, queensHi, d) & emptyHi) != 0)
+				return true;
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#moveIterator()
+	 */
+	@Override
+	public MoveIterator moveIterator() {
+		return new BitboardMoveIterator();
+	}
+
+	/**
+	 * Staged move iterator sliding occupancy sets, in the same direction and
+	 * distance order as {@link BoardBitboard#possibleMoves(int[])}.
+	 */
+	private class BitboardMoveIterator implements MoveIterator {
+		// Empty locations at reset.
+		private long emptyLo;
+		private long emptyHi;
+		// Queens not yet moved.
+		private long queensLo;
+		private long queensHi;
+		// Initial queen location index.
+		private int f;
+		// Queen move direction and current final location.
+		private int dir;
+		private long qLo;
+		private long qHi;
+		// Locations an arrow may pass through for current queen move.
+		private long aEmptyLo;
+		private long aEmptyHi;
+		// Arrow direction and current arrow location.
+		private int arrowDir;
+		private long aLo;
+		private long aHi;
+		// Whether there is a current queen move.
+		private boolean hasQueen;
+		// Current packed move.
+		private int move;
+
+		BitboardMoveIterator() {
+			reset();
+		}
+
+		@Override
+		public void reset() {
+			emptyLo = ~(blackLo | whiteLo | arrowLo);
+			emptyHi = ~(blackHi | whiteHi | arrowHi) & BOARD_HI;
+			queensLo = blackTurn ? blackLo : whiteLo;
+			queensHi = blackTurn ? blackHi : whiteHi;
+			dir = 8;
+			hasQueen = false;
+		}
+
+		@Override
+		public boolean nextQueen() {
+			while (true) {
+				// Take next queen once all directions are exhausted.
+				if (dir == 8) {
+					if ((queensLo | queensHi) == 0) {
+						hasQueen = false;
+						return false;
+					}
+					f = lowest(queensLo, queensHi);
+					queensLo &= ~bitLo(f);
+					queensHi &= ~bitHi(f);
+					dir = 0;
+					qLo = bitLo(f);
+					qHi = bitHi(f);
+				}
+				// Slide queen one more step.
+				long nLo = shiftLo(qLo, qHi, dir) & emptyLo;
+				long nHi = shiftHi(qLo, qHi, dir) & emptyHi;
+				if ((nLo | nHi) == 0) {
+					dir++;
+					qLo = bitLo(f);
+					qHi = bitHi(f);
+					continue;
+				}
+				qLo = nLo;
+				qHi = nHi;
+				move = PACKED[f] | PACKED[lowest(qLo, qHi)] << 8;
+				aEmptyLo = (emptyLo | bitLo(f)) & ~qLo;
+				aEmptyHi = (emptyHi | bitHi(f)) & ~qHi;
+				arrowDir = 0;
+				aLo = qLo;
+				aHi = qHi;
+				hasQueen = true;
+				return true;
+			}
+		}
+
+		@Override
+		public boolean nextArrow() {
+			if (!hasQueen)
+				return false;
+			while (arrowDir < 8) {
+				// Slide arrow one more step.
+				long mLo = shiftLo(aLo, aHi, arrowDir) & aEmptyLo;
+				long mHi = shiftHi(aLo, aHi, arrowDir) & aEmptyHi;
+				if ((mLo | mHi) == 0) {
+					arrowDir++;
+					aLo = qLo;
+					aHi = qHi;
+					continue;
+				}
+				aLo = mLo;
+				aHi = mHi;
+				move = (move & 0xFFFF) | PACKED[lowest(aLo, aHi)] << 16;
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public boolean next() {
+			while (!nextArrow())
+				if (!nextQueen())
+					return false;
+			return true;
+		}
+
+		@Override
+		public int move() {
+			return move;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#getChambers()
+	 */
+	@Override
+	public byte[][][] getChambers() {
+		// Don't recalculate if not needed.
+		if (chambers != null)
+			return chambers;
+		byte[][][] both = new byte[3][ROWS][COLUMNS];
+		// Initialize chamber queen counts at -1 for non-chambers.
+		for (int i = 0; i < ROWS; i++)
+			for (int j = 0; j < COLUMNS; j++) {
+				both[1][i][j] = -1;
+				both[2][i][j] = -1;
+			}
+		// Label all chambers, then black chambers with white queens
+		// blocking, then white chambers with black queens blocking.
+		labelChambers(both, 0, ~arrowLo, ~arrowHi & BOARD_HI);
+		labelChambers(both, 1, ~(arrowLo | whiteLo), ~(arrowHi | whiteHi) & BOARD_HI);
+		labelChambers(both, 2, ~(arrowLo | blackLo), ~(arrowHi | blackHi) & BOARD_HI);
+		// Save recalculated chambers.
+		chambers = both;
+		return both;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.Position#getChamber(int, int, int)
+	 */
+	@Override
+	public int getChamber(int view, int r, int c) {
+		return getChambers()[view][r][c];
+	}
+
+	/**
+	 * Flood fill the chambers of a given set of non-blocking locations, and
+	 * write one layer of the chamber representation.
+	 * 
+	 * @param chambers
+	 *            Chamber array to write to.
+	 * @param layer
+	 *            0 for chamber labels, 1 for black queen counts, or 2 for white
+	 *            queen counts.
+	 * @param openLo
+	 *            Low half of non-blocking locations.
+	 * @param openHi
+	 *            High half of non-blocking locations.
+	 */
+	private void labelChambers(byte[][][] chambers, int layer, long openLo, long openHi) {
+		// Chamber label, reserving 0 for non-chambers.
+		byte label = 1;
+		while ((openLo | openHi) != 0) {
+			// Start chamber at first unlabelled location, in row major order.
+			int s = lowest(openLo, openHi);
+			long cLo = bitLo(s);
+			long cHi = bitHi(s);
+			// Grow chamber by one step in every direction until it stops
+			// changing.
+			while (true) {
+				long gLo = cLo;
+				long gHi = cHi;
+				for (int d = 0; d < 8; d++) {
+					gLo |= shiftLo(cLo, cHi, d);
+					gHi |= shiftHi(cLo, cHi, d);
+				}
+				gLo &= openLo;
+				gHi &= openHi;
+				if (gLo == cLo && gHi == cHi)
+					break;
+				cLo = gLo;
+				cHi = gHi;
+			}
+			openLo &= ~cLo;
+			openHi &= ~cHi;
+			// Layer value for each chamber location.
+			byte value;
+			if (layer == 0)
+				value = label;
+			else if (layer == 1)
+				value = (byte) (Long.bitCount(cLo & blackLo) + Long.bitCount(cHi & blackHi));
+			else
+				value = (byte) (Long.bitCount(cLo & whiteLo) + Long.bitCount(cHi & whiteHi));
+			while ((cLo | cHi) != 0) {
+				s = lowest(cLo, cHi);
+				cLo &= ~bitLo(s);
+				cHi &= ~bitHi(s);
+				chambers[layer][s / COLUMNS][s % COLUMNS] = value;
+			}
+			label++;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#getPoints()
+	 */
+	@Override
+	public int[][] getPoints() {
+		// Calculate chambers if needed.
+		byte[][][] chambers = getChambers();
+		// Shared and unshared points, for black and white.
+		int[][] points = new int[2][2];
+		for (int i = 0; i < ROWS; i++)
+			for (int j = 0; j < COLUMNS; j++) {
+				if (chambers[1][i][j] > 0) {
+					points[0][0]++;
+					if (chambers[2][i][j] <= 0)
+						points[1][0]++;
+				}
+				if (chambers[2][i][j] > 0) {
+					points[0][1]++;
+					if (chambers[1][i][j] <= 0)
+						points[1][1]++;
+				}
+			}
+		return points;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#checkFinished()
+	 */
+	@Override
+	public boolean checkFinished() {
+		// Without calculated chambers, grow black chambers from black queens
+		// with white queens blocking, and white chambers likewise, and check
+		// if they meet.
+		if (chambers == null) {
+			long blackOpenLo = ~(arrowLo | whiteLo);
+			long blackOpenHi = ~(arrowHi | whiteHi) & BOARD_HI;
+			long whiteOpenLo = ~(arrowLo | blackLo);
+			long whiteOpenHi = ~(arrowHi | blackHi) & BOARD_HI;
+			long bLo = blackLo;
+			long bHi = blackHi;
+			long wLo = whiteLo;
+			long wHi = whiteHi;
+			while (true) {
+				long gBLo = bLo;
+				long gBHi = bHi;
+				long gWLo = wLo;
+				long gWHi = wHi;
+				for (int d = 0; d < 8; d++) {
+					gBLo |= shiftLo(bLo, bHi, d);
+					gBHi |= shiftHi(bLo, bHi, d);
+					gWLo |= shiftLo(wLo, wHi, d);
+					gWHi |= shiftHi(wLo, wHi, d);
+				}
+				gBLo &= blackOpenLo;
+				gBHi &= blackOpenHi;
+				gWLo &= whiteOpenLo;
+				gWHi &= whiteOpenHi;
+				if (((gBLo & gWLo) | (gBHi & gWHi)) != 0)
+					return false;
+				if (gBLo == bLo && gBHi == bHi && gWLo == wLo && gWHi == wHi)
+					return true;
+				bLo = gBLo;
+				bHi = gBHi;
+				wLo = gWLo;
+				wHi = gWHi;
+			}
+		}
+		// Check if any chamber is occupied by both players.
+		for (int i = 0; i < ROWS; i++)
+			for (int j = 0; j < COLUMNS; j++)
+				if (chambers[1][i][j] > 0 && chambers[2][i][j] > 0)
+					return false;
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#get(int, int)
+	 */
+	@Override
+	public int get(int r, int c) {
+		int s = r * COLUMNS + c;
+		if (isSet(blackLo, blackHi, s))
+			return B;
+		if (isSet(whiteLo, whiteHi, s))
+			return W;
+		if (isSet(blackArrowLo, blackArrowHi, s))
+			return AB;
+		if (isSet(arrowLo, arrowHi, s))
+			return AW;
+		return E;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#getRowCount()
+	 */
+	@Override
+	public int getRowCount() {
+		return ROWS;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#getColumnCount()
+	 */
+	@Override
+	public int getColumnCount() {
+		return COLUMNS;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#getState()
+	 */
+	@Override
+	public byte[][] getState() {
+		byte[][] state = new byte[ROWS][COLUMNS];
+		for (int i = 0; i < ROWS; i++)
+			for (int j = 0; j < COLUMNS; j++)
+				state[i][j] = (byte) get(i, j);
+		return state;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#getTurn()
+	 */
+	@Override
+	public boolean getTurn() {
+		return blackTurn;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#getTime()
+	 */
+	@Override
+	public long getTime() {
+		return System.currentTimeMillis() - turnTime;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		String output = "";
+		for (int i = 0; i < ROWS; i++)
+			for (int j = 0; j < COLUMNS; j++)
+				output += get(i, j) + (j == COLUMNS - 1 ? "\n" : " ");
+		return output;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see amazon.board.BoardModel#hash()
+	 */
+	@Override
+	public long hash() {
+		return hash;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#clone()
+	 */
+	public BoardModel clone() {
+		BoardBitboard clone = new BoardBitboard();
+		clone.blackLo = blackLo;
+		clone.blackHi = blackHi;
+		clone.whiteLo = whiteLo;
+		clone.whiteHi = whiteHi;
+		clone.arrowLo = arrowLo;
+		clone.arrowHi = arrowHi;
+		clone.blackArrowLo = blackArrowLo;
+		clone.blackArrowHi = blackArrowHi;
+		clone.blackTurn = blackTurn;
+		clone.hash = hash;
+		return clone;
+	}
+}
@@ -4,9 +4,10 @@ import java.util.ArrayList;
 
 /**
  * "Game of Amazons" board model, modeling board locations and checking for
- * valid moves.
+ * valid moves. A board model is also a read-only {@link Position} view of its
+ * current position.
  */
-public interface BoardModel {
+public interface BoardModel extends Position {
 
 	// Empty.
 	byte E = 0;
@@ -60,6 +61,25 @@ public interface BoardModel {
 	 */
 	boolean move(int rQI, int cQI, int rQF, int cQF, int rA, int cA);
 
+	/**
+	 * Perform a packed move, after determining its validity.
+	 * 
+	 * @param move
+	 *            Move packed as by {@link Move#encode}.
+	 * @return Whether move was performed.
+	 */
+	boolean move(int move);
+
+	/**
+	 * Undo the last performed move, restoring the board, player turn, and
+	 * cached chambers to exactly their state before it. Moves must be undone
+	 * in reverse order of being performed.
+	 * 
+	 * @param move
+	 *            Packed move last performed on this board.
+	 */
+	void undo(int move);
+
 	/**
 	 * Generate a list of possible moves.
 	 * 
@@ -68,19 +88,70 @@ public interface BoardModel {
 	ArrayList<int[]> possibleMoves();
 
 	/**
+	 * Generate possible moves packed as by {@link Move#encode}, writing them
+	 * into a caller owned buffer without allocating. Moves are generated in
+	 * the same order as {@link #possibleMoves()}.
+	 * 
+	 * @param moves
+	 *            Buffer to write moves to, at least {@link Move#MAX_MOVES} long.
+	 * @return Number of moves written.
+	 */
+	int possibleMoves(int[] moves);
+
+	/**
+	 * Generate possible moves packed as by {@link Move#encode}, optionally
+	 * skipping moves of queens in owned chambers, which hold no opposing
+	 * queens and so can't gain any territory. Moves of queens in owned
+	 * chambers are still generated if no other moves are possible.
+	 * 
+	 * @param moves
+	 *            Buffer to write moves to, at least {@link Move#MAX_MOVES} long.
+	 * @param filterOwned
+	 *            Whether to skip moves of queens in owned chambers.
+	 * @return Number of moves written.
+	 */
+	int possibleMoves(int[] moves, boolean filterOwned);
+
+	/**
+	 * Create a staged iterator over the possible moves of this board, which
+	 * generates arrows only for the queen moves they are asked for.
+	 * 
+	 * @return Move iterator, starting from the current position.
+	 */
+	MoveIterator moveIterator();
+
+	/**
+	 * Count the possible moves of a given player, whether or not it's their
+	 * turn, from queen and arrow ray lengths without generating moves.
+	 * 
+	 * @param black
+	 *            Count black or white player's moves.
+	 * @return Number of possible moves.
+	 */
+	int countMoves(boolean black);
+
+	/**
+	 * Count the possible moves of the queen at a given location, from queen
+	 * and arrow ray lengths without generating moves.
+	 * 
 	 * @param r
-	 *            Row of location.
+	 *            Row of queen.
 	 * @param c
-	 *            Column of location.
-	 * @return The value of a given board location.
+	 *            Column of queen.
+	 * @return Number of possible moves, or 0 if location isn't a queen.
 	 */
-	int get(int r, int c);
-
-	/** @return The row count of board. */
-	int getRowCount();
+	int countMoves(int r, int c);
 
-	/** @return The column count of board. */
-	int getColumnCount();
+	/**
+	 * Check whether a given player has any possible move, whether or not it's
+	 * their turn. A queen that can step to an empty neighbor can always shoot
+	 * back to the location it left, so only neighbors need checking.
+	 * 
+	 * @param black
+	 *            Check black or white player.
+	 * @return Whether player has a possible move.
+	 */
+	boolean hasMoves(boolean black);
 
 	/** Get the current state of the board. */
 	byte[][] getState();
@@ -112,19 +183,22 @@ public interface BoardModel {
 	public boolean checkFinished();
 
 	/**
-	 * Get the current player turn.
+	 * Get the time in milliseconds since the start of the turn.
 	 * 
-	 * @return Whether its black player's turn.
+	 * @return Milliseconds since start of current turn.
 	 */
-	public boolean getTurn();
+	public long getTime();
 
 	/**
-	 * Get the time in milliseconds since the start of the turn.
+	 * Get the Zobrist hash of the current position, covering queens, arrows
+	 * and their colors, and player turn. It is updated incrementally by each
+	 * move and undo, and equal positions have equal hashes across board
+	 * models.
 	 * 
-	 * @return Milliseconds since start of current turn.
+	 * @return 64 bit position hash.
 	 */
-	public long getTime();
+	public long hash();
 
 	/** Create a clone of this board. */
 	public BoardModel clone();
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,435 @@
+package amazon.board;
+
+/**
+ * Chamber regions of an array board, kept as flat location arrays for each of
+ * the three chamber views. Regions are labelled from scratch in a single union
+ * find scan, and relabelled incrementally around the locations changed by a
+ * move. No per location allocation is made after construction. Views are
+ * indexed as in {@link BoardModel#getChambers()}: 0 for all chambers, 1 for
+ * black chambers with white queens blocking, and 2 for white chambers with
+ * black queens blocking.
+ */
+class ChamberMap {
+	// Board dimensions.
+	private final int rows;
+	private final int columns;
+	private final int squares;
+	// Row and column of each location index.
+	private final int[] rowOf;
+	private final int[] columnOf;
+	// Neighbor location indices, eight slots per location.
+	private final int[] neighbors;
+	private final int[] neighborCount;
+	// Neighbor location indices scanned before each location in row major
+	// order, four slots per location.
+	private final int[] earlier;
+	private final int[] earlierCount;
+
+	// Region id of each location for each view, with 0 for blocking
+	// locations. Ids are arbitrary, and only made into ordered labels when
+	// written out.
+	private final int[][] region;
+	// Black and white queen counts and location count of each region id, for
+	// each view.
+	private final int[][] blackCount;
+	private final int[][] whiteCount;
+	private final int[][] size;
+	// Unused region ids for each view.
+	private final int[][] freeIds;
+	private final int[] freeCount;
+
+	// Scratch flood fill queue.
+	private final int[] queue;
+	// Affected region ids of the current update.
+	private final boolean[] affected;
+	// Visit stamp of each location, and the stamp of the view currently
+	// being labelled.
+	private final int[] visited;
+	private int stamp;
+	// Output label of each region id of the all chambers view, and whether
+	// they are up to date with the regions.
+	private final int[] labelOf;
+	private boolean labelled;
+	// Scratch union find parent of each location for each view, with -1 for
+	// blocking locations.
+	private final int[][] parent;
+	// Scratch next region id of each view while labelling from scratch.
+	private final int[] nextId = new int[3];
+
+	/**
+	 * Create an unlabelled chamber map for a given board size.
+	 * 
+	 * @param rows
+	 *            Number of board rows.
+	 * @param columns
+	 *            Number of board columns.
+	 */
+	ChamberMap(int rows, int columns) {
+		this.rows = rows;
+		this.columns = columns;
+		squares = rows * columns;
+		rowOf = new int[squares];
+		columnOf = new int[squares];
+		neighbors = new int[squares * 8];
+		neighborCount = new int[squares];
+		earlier = new int[squares * 4];
+		earlierCount = new int[squares];
+		for (int i = 0; i < squares; i++) {
+			rowOf[i] = i / columns;
+			columnOf[i] = i % columns;
+			for (int rN = -1; rN <= 1; rN++)
+				for (int cN = -1; cN <= 1; cN++) {
+					int r = rowOf[i] + rN;
+					int c = columnOf[i] + cN;
+					if ((rN == 0 && cN == 0) || r < 0 || r >= rows || c < 0 || c >= columns)
+						continue;
+					neighbors[i * 8 + neighborCount[i]++] = r * columns + c;
+					if (r * columns + c < i)
+						earlier[i * 4 + earlierCount[i]++] = r * columns + c;
+				}
+		}
+		region = new int[3][squares];
+		blackCount = new int[3][squares + 1];
+		whiteCount = new int[3][squares + 1];
+		size = new int[3][squares + 1];
+		freeIds = new int[3][squares];
+		freeCount = new int[3];
+		queue = new int[squares];
+		affected = new boolean[squares + 1];
+		visited = new int[squares];
+		labelOf = new int[squares + 1];
+		parent = new int[3][squares];
+	}
+
+	/**
+	 * Create a copy of another chamber map, sharing only its immutable
+	 * location tables.
+	 * 
+	 * @param other
+	 *            Chamber map to copy.
+	 */
+	ChamberMap(ChamberMap other) {
+		rows = other.rows;
+		columns = other.columns;
+		squares = other.squares;
+		rowOf = other.rowOf;
+		columnOf = other.columnOf;
+		neighbors = other.neighbors;
+		neighborCount = other.neighborCount;
+		earlier = other.earlier;
+		earlierCount = other.earlierCount;
+		region = new int[3][];
+		blackCount = new int[3][];
+		whiteCount = new int[3][];
+		size = new int[3][];
+		freeIds = new int[3][];
+		for (int v = 0; v < 3; v++) {
+			region[v] = other.region[v].clone();
+			blackCount[v] = other.blackCount[v].clone();
+			whiteCount[v] = other.whiteCount[v].clone();
+			size[v] = other.size[v].clone();
+			freeIds[v] = other.freeIds[v].clone();
+		}
+		freeCount = other.freeCount.clone();
+		queue = new int[squares];
+		affected = new boolean[squares + 1];
+		visited = new int[squares];
+		labelOf = new int[squares + 1];
+		parent = new int[3][squares];
+	}
+
+	/**
+	 * Label every chamber of a board from scratch, for all three views in a
+	 * single row major scan. Each open location is joined with the open
+	 * neighbors scanned before it, using union find with the earliest location
+	 * of each chamber as its root, and a second scan numbers chambers by that
+	 * root and counts their queens.
+	 * 
+	 * @param board
+	 *            Board to label.
+	 */
+	void recompute(byte[][] board) {
+		labelled = false;
+		// Join each open location with its earlier open neighbors.
+		for (int i = 0; i < squares; i++) {
+			byte value = board[rowOf[i]][columnOf[i]];
+			for (int v = 0; v < 3; v++) {
+				int[] p = parent[v];
+				if (!open(v, value)) {
+					p[i] = -1;
+					continue;
+				}
+				p[i] = i;
+				for (int k = 0; k < earlierCount[i]; k++) {
+					int n = earlier[i * 4 + k];
+					if (p[n] >= 0)
+						union(p, i, n);
+				}
+			}
+		}
+		// Number chambers at their root, which is always scanned first.
+		nextId[0] = nextId[1] = nextId[2] = 1;
+		for (int i = 0; i < squares; i++) {
+			byte value = board[rowOf[i]][columnOf[i]];
+			for (int v = 0; v < 3; v++) {
+				int[] p = parent[v];
+				if (p[i] < 0) {
+					region[v][i] = 0;
+					continue;
+				}
+				int root = find(p, i);
+				if (root == i) {
+					int id = nextId[v]++;
+					region[v][i] = id;
+					blackCount[v][id] = 0;
+					whiteCount[v][id] = 0;
+					size[v][id] = 0;
+				}
+				int id = region[v][root];
+				region[v][i] = id;
+				size[v][id]++;
+				if (value == BoardModel.B)
+					blackCount[v][id]++;
+				else if (value == BoardModel.W)
+					whiteCount[v][id]++;
+			}
+		}
+		// Remaining ids are unused, with lowest id on top.
+		for (int v = 0; v < 3; v++) {
+			freeCount[v] = 0;
+			for (int id = squares; id >= nextId[v]; id--)
+				freeIds[v][freeCount[v]++] = id;
+		}
+	}
+
+	/** @return Root of a location's union find tree, halving its path. */
+	private static int find(int[] p, int i) {
+		while (p[i] != i) {
+			p[i] = p[p[i]];
+			i = p[i];
+		}
+		return i;
+	}
+
+	/** Join two union find trees, keeping the earlier root. */
+	private static void union(int[] p, int i, int j) {
+		int rI = find(p, i);
+		int rJ = find(p, j);
+		if (rI < rJ)
+			p[rJ] = rI;
+		else if (rJ < rI)
+			p[rI] = rJ;
+	}
+
+	/**
+	 * Relabel only the chambers around a set of changed locations, such as
+	 * the initial queen, final queen, and arrow locations of a performed or
+	 * undone move.
+	 * 
+	 * @param board
+	 *            Board after the change.
+	 * @param changed
+	 *            Changed location indices.
+	 * @param changedCount
+	 *            Number of changed locations.
+	 */
+	void update(byte[][] board, int[] changed, int changedCount) {
+		labelled = false;
+		// Relabel from scratch if affected chambers cover most of the board,
+		// since a single scan is then cheaper than flooding each view.
+		int affectedSize = 0;
+		for (int k = 0; k < changedCount; k++) {
+			int s = changed[k];
+			affectedSize += mark(region[0][s]);
+			for (int n = 0; n < neighborCount[s]; n++)
+				affectedSize += mark(region[0][neighbors[s * 8 + n]]);
+		}
+		for (int k = 0; k < changedCount; k++) {
+			int s = changed[k];
+			affected[region[0][s]] = false;
+			for (int n = 0; n < neighborCount[s]; n++)
+				affected[region[0][neighbors[s * 8 + n]]] = false;
+		}
+		if (affectedSize > squares / 2) {
+			recompute(board);
+			return;
+		}
+		for (int v = 0; v < 3; v++) {
+			stamp++;
+			int[] ids = region[v];
+			// Mark regions containing or bordering a changed location.
+			for (int k = 0; k < changedCount; k++) {
+				int s = changed[k];
+				affected[ids[s]] = true;
+				for (int n = 0; n < neighborCount[s]; n++)
+					affected[ids[neighbors[s * 8 + n]]] = true;
+			}
+			// Release affected ids, but never the blocking id 0.
+			affected[0] = false;
+			for (int k = 0; k < changedCount; k++) {
+				int s = changed[k];
+				release(v, ids[s]);
+				for (int n = 0; n < neighborCount[s]; n++)
+					release(v, ids[neighbors[s * 8 + n]]);
+				// Changed locations may have become blocking.
+				ids[s] = 0;
+			}
+			// Every remaining piece of an affected region borders a changed
+			// location, so flooding from there relabels all of them.
+			for (int k = 0; k < changedCount; k++) {
+				int s = changed[k];
+				flood(board, v, s);
+				for (int n = 0; n < neighborCount[s]; n++)
+					flood(board, v, neighbors[s * 8 + n]);
+			}
+		}
+	}
+
+	/**
+	 * Mark a chamber region id of the all chambers view as affected.
+	 * 
+	 * @return Location count of the region if newly marked, or 0.
+	 */
+	private int mark(int id) {
+		if (id == 0 || affected[id])
+			return 0;
+		affected[id] = true;
+		return size[0][id];
+	}
+
+	/** Return an affected region id to the unused ids of a view. */
+	private void release(int v, int id) {
+		if (!affected[id])
+			return;
+		affected[id] = false;
+		freeIds[v][freeCount[v]++] = id;
+	}
+
+	/**
+	 * @return Whether a board value doesn't block chambers of a given view.
+	 */
+	private static boolean open(int v, byte value) {
+		if (value == BoardModel.AB || value == BoardModel.AW)
+			return false;
+		return v == 0 || (v == 1 && value != BoardModel.W) || (v == 2 && value != BoardModel.B);
+	}
+
+	/**
+	 * Label the chamber containing a given location with a new region id, if
+	 * it is open and not yet visited while labelling the current view.
+	 * 
+	 * @param board
+	 *            Board to label.
+	 * @param v
+	 *            Chamber view.
+	 * @param start
+	 *            Location index to start from.
+	 */
+	private void flood(byte[][] board, int v, int start) {
+		if (visited[start] == stamp || !open(v, board[rowOf[start]][columnOf[start]]))
+			return;
+		int id = freeIds[v][--freeCount[v]];
+		int bCount = 0;
+		int wCount = 0;
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = start;
+		visited[start] = stamp;
+		while (head < tail) {
+			int s = queue[head++];
+			region[v][s] = id;
+			byte value = board[rowOf[s]][columnOf[s]];
+			if (value == BoardModel.B)
+				bCount++;
+			else if (value == BoardModel.W)
+				wCount++;
+			for (int n = 0; n < neighborCount[s]; n++) {
+				int t = neighbors[s * 8 + n];
+				if (visited[t] != stamp && open(v, board[rowOf[t]][columnOf[t]])) {
+					visited[t] = stamp;
+					queue[tail++] = t;
+				}
+			}
+		}
+		blackCount[v][id] = bCount;
+		whiteCount[v][id] = wCount;
+		size[v][id] = tail;
+	}
+
+	/**
+	 * @param location
+	 *            Location index.
+	 * @return Whether the chamber of a location holds no queens of one of the
+	 *         players.
+	 */
+	boolean owned(int location) {
+		int id = region[0][location];
+		return blackCount[0][id] == 0 || whiteCount[0][id] == 0;
+	}
+
+	/**
+	 * @return Whether no location is both in a black chamber holding black
+	 *         queens and in a white chamber holding white queens, as checked
+	 *         by {@link BoardModel#checkFinished()}.
+	 */
+	boolean finished() {
+		for (int i = 0; i < squares; i++) {
+			int black = region[1][i];
+			int white = region[2][i];
+			if (black != 0 && white != 0 && blackCount[1][black] > 0 && whiteCount[2][white] > 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Read one location of the chamber representation described by
+	 * {@link BoardModel#getChambers()}, straight from the regions.
+	 * 
+	 * @param v
+	 *            Chamber view.
+	 * @param location
+	 *            Location index.
+	 * @return Chamber value of the location.
+	 */
+	int chamber(int v, int location) {
+		int id = region[v][location];
+		if (v == 1)
+			return id == 0 ? -1 : blackCount[1][id];
+		if (v == 2)
+			return id == 0 ? -1 : whiteCount[2][id];
+		if (!labelled)
+			label();
+		return labelOf[id];
+	}
+
+	/**
+	 * Label the regions of the all chambers view in row major order of their
+	 * first location, as described by {@link BoardModel#getChambers()}.
+	 */
+	private void label() {
+		for (int id = 0; id <= squares; id++)
+			labelOf[id] = 0;
+		int label = 1;
+		for (int i = 0; i < squares; i++) {
+			int id = region[0][i];
+			if (id != 0 && labelOf[id] == 0)
+				labelOf[id] = label++;
+		}
+		labelled = true;
+	}
+
+	/**
+	 * Write out the chamber representation described by
+	 * {@link BoardModel#getChambers()}.
+	 * 
+	 * @return Chamber ownership array.
+	 */
+	byte[][][] toArray() {
+		byte[][][] chambers = new byte[3][rows][columns];
+		for (int i = 0; i < squares; i++)
+			for (int v = 0; v < 3; v++)
+				chambers[v][rowOf[i]][columnOf[i]] = (byte) chamber(v, i);
+		return chambers;
+	}
+}
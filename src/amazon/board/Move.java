@@ -0,0 +1,89 @@
+package amazon.board;
+
+/**
+ * Packed move representation, encoding the initial queen, final queen, and
+ * arrow locations of a move into a single int. Each location uses one byte,
+ * with the row index in the low 4 bits and the column index in the high 4
+ * bits, so initial queen, final queen, and arrow occupy the first, second, and
+ * third bytes respectively. Packed moves are never negative.
+ */
+public final class Move {
+	/** Upper bound on the number of possible moves from any position. */
+	public static final int MAX_MOVES = 4 * 35 * 35;
+
+	private Move() {
+	}
+
+	/**
+	 * Pack a move into a single int.
+	 *
+	 * @param rQI
+	 *            Initial queen row index.
+	 * @param cQI
+	 *            Initial queen column index.
+	 * @param rQF
+	 *            Final queen row index.
+	 * @param cQF
+	 *            Final queen column index.
+	 * @param rA
+	 *            Arrow row index.
+	 * @param cA
+	 *            Arrow column index.
+	 * @return Packed move.
+	 */
+	public static int encode(int rQI, int cQI, int rQF, int cQF, int rA, int cA) {
+		return rQI | cQI << 4 | rQF << 8 | cQF << 12 | rA << 16 | cA << 20;
+	}
+
+	/** @return Initial queen row index of a packed move. */
+	public static int rQI(int move) {
+		return move & 0xF;
+	}
+
+	/** @return Initial queen column index of a packed move. */
+	public static int cQI(int move) {
+		return move >>> 4 & 0xF;
+	}
+
+	/** @return Final queen row index of a packed move. */
+	public static int rQF(int move) {
+		return move >>> 8 & 0xF;
+	}
+
+	/** @return Final queen column index of a packed move. */
+	public static int cQF(int move) {
+		return move >>> 12 & 0xF;
+	}
+
+	/** @return Arrow row index of a packed move. */
+	public static int rA(int move) {
+		return move >>> 16 & 0xF;
+	}
+
+	/** @return Arrow column index of a packed move. */
+	public static int cA(int move) {
+		return move >>> 20 & 0xF;
+	}
+
+	/**
+	 * Unpack a move into the six index array used by
+	 * {@link BoardModel#possibleMoves()}.
+	 *
+	 * @param move
+	 *            Packed move.
+	 * @return Initial queen, final queen, and arrow row and column indices.
+	 */
+	public static int[] toArray(int move) {
+		return new int[] { rQI(move), cQI(move), rQF(move), cQF(move), rA(move), cA(move) };
+	}
+
+	/**
+	 * @param move
+	 *            Packed move.
+	 * @return Readable representation of a packed move.
+	 */
+	public static String toString(int move) {
+		return "{" + rQI(move) + "," + cQI(move) + "," + rQF(move) + "," + cQF(move) + "," + rA(move) + ","
+				+ cA(move) + "}";
+	}
+}
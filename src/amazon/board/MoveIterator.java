@@ -0,0 +1,49 @@
+package amazon.board;
+
+/**
+ * Staged iterator over the possible moves of a board, yielding queen moves
+ * first and only generating the arrows of a queen move when asked, so that a
+ * caller can stop early or skip a queen move without its arrows ever being
+ * generated. Moves are yielded in the same order as
+ * {@link BoardModel#possibleMoves()}.
+ * 
+ * The board may be changed while iterating, such as by performing the current
+ * move, as long as it is restored before the iterator is advanced again.
+ */
+public interface MoveIterator {
+
+	/** Restart iteration from the board's current position. */
+	void reset();
+
+	/**
+	 * Advance to the next queen move, skipping any arrows of the current queen
+	 * move that were not iterated.
+	 * 
+	 * @return Whether there was another queen move.
+	 */
+	boolean nextQueen();
+
+	/**
+	 * Advance to the next arrow of the current queen move.
+	 * 
+	 * @return Whether the current queen move had another arrow.
+	 */
+	boolean nextArrow();
+
+	/**
+	 * Advance to the next move, moving on to the next queen move once the
+	 * current one has no more arrows.
+	 * 
+	 * @return Whether there was another move.
+	 */
+	boolean next();
+
+	/**
+	 * Get the current move, packed as by {@link Move#encode}. Arrow indices are
+	 * 0 until {@link #nextArrow()} has found an arrow for the current queen
+	 * move.
+	 * 
+	 * @return Current packed move.
+	 */
+	int move();
+}
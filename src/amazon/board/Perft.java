@@ -0,0 +1,254 @@
+package amazon.board;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Move generation verification and throughput harness. Counts the leaf nodes
+ * of the move tree to a given depth from a set of stored positions, reporting
+ * nodes per second for each board model, and cross-checks two board models
+ * move for move, including move validation, move, undo, hash, and chambers.
+ * 
+ * Usage: {@code java amazon.board.Perft [depth] [model] [model]}, where models
+ * are "array" or "bitboard". Exits with status 1 if the models disagree.
+ */
+public class Perft {
+	/** Names of stored positions. */
+	public static final String[] NAMES = { "initial", "early", "middle", "late" };
+	/**
+	 * Stored positions, one character per location: '.' empty, 'B' black
+	 * queen, 'W' white queen, 'b' black arrow, and 'w' white arrow. All are
+	 * white's turn, reached by random play from the initial position.
+	 */
+	public static final String[][] POSITIONS = { {
+			"...W..W...",
+			"..........",
+			"..........",
+			"W........W",
+			"..........",
+			"..........",
+			"B........B",
+			"..........",
+			"..........",
+			"...B..B..." }, {
+			"b.w.......",
+			"....w.b...",
+			"..........",
+			"..w.ww.w.w",
+			".WW..WB...",
+			"....b.w.b.",
+			"..b...W...",
+			".......B..",
+			"....w.B.Bb",
+			".wb..bbb.." }, {
+			"...wbWw.bw",
+			"...bb..b..",
+			"w.bwBb....",
+			"..w..b.B..",
+			"b...bW.bb.",
+			"..wBw.w..b",
+			"....w.bw.w",
+			"w.b.wWwB..",
+			".wbb.wb.bw",
+			".Ww..w.b.." }, {
+			".Wwww.b.w.",
+			"ww.Wwbbb.w",
+			"wwwwbBbb.b",
+			"..b.bbw.B.",
+			"..bbbb.w..",
+			"wb...b.b.w",
+			"wW..bBbwbb",
+			"..bwbbw.wB",
+			".wwwb.bbww",
+			".w.bwwbWw." } };
+
+	// Board value of each position character.
+	private static final String VALUES = ".BWbw";
+
+	// Packed move buffer for each depth.
+	private int[][] buffers;
+	// Random coordinates for validation cross-checks.
+	private Random random = new Random(0);
+
+	/**
+	 * Create a harness for a given maximum depth.
+	 * 
+	 * @param depth
+	 *            Maximum depth to count to.
+	 */
+	public Perft(int depth) {
+		buffers = new int[depth + 1][Move.MAX_MOVES];
+	}
+
+	/**
+	 * Parse a stored position.
+	 * 
+	 * @param position
+	 *            Position rows, one character per location.
+	 * @return Board state.
+	 */
+	public static byte[][] parse(String[] position) {
+		byte[][] state = new byte[position.length][];
+		for (int i = 0; i < position.length; i++) {
+			state[i] = new byte[position[i].length()];
+			for (int j = 0; j < position[i].length(); j++) {
+				int value = VALUES.indexOf(position[i].charAt(j));
+				if (value < 0)
+					throw new IllegalArgumentException("Unknown position character '" + position[i].charAt(j) + "'!");
+				state[i][j] = (byte) value;
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Create a board model by name.
+	 * 
+	 * @param model
+	 *            "array" or "bitboard".
+	 * @param state
+	 *            Board state.
+	 * @param blackTurn
+	 *            Whether it's black player's turn.
+	 * @return Board model in given position.
+	 */
+	public static BoardModel create(String model, byte[][] state, boolean blackTurn) {
+		if (model.equals("array"))
+			return new BoardArray(state, blackTurn);
+		if (model.equals("bitboard"))
+			return new BoardBitboard(state, blackTurn);
+		throw new IllegalArgumentException("Unknown board model \"" + model + "\"!");
+	}
+
+	/**
+	 * Count the leaf nodes of the move tree to a given depth, performing and
+	 * undoing moves on the given board. The last level is counted without
+	 * performing its moves.
+	 * 
+	 * @param board
+	 *            Board to count from, restored when done.
+	 * @param depth
+	 *            Depth to count to.
+	 * @return Number of leaf nodes.
+	 */
+	public long perft(BoardModel board, int depth) {
+		int[] moves = buffers[depth];
+		int count = board.possibleMoves(moves);
+		if (depth <= 1)
+			return depth == 1 ? count : 1;
+		long nodes = 0;
+		for (int i = 0; i < count; i++) {
+			board.move(moves[i]);
+			nodes += perft(board, depth - 1);
+			board.undo(moves[i]);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Cross-check two board models in the same position, move for move, to a
+	 * given depth. Positions are compared in full above the last level, where
+	 * only hashes are compared. Both boards are restored when done.
+	 * 
+	 * @param a
+	 *            First board model.
+	 * @param b
+	 *            Second board model.
+	 * @param depth
+	 *            Depth to check to.
+	 * @return Description of the first difference found, or null if none.
+	 */
+	public String verify(BoardModel a, BoardModel b, int depth) {
+		String difference = compare(a, b);
+		if (difference != null)
+			return difference;
+		// Compare generated moves, in generation order.
+		int[] movesA = buffers[depth];
+		int[] movesB = new int[Move.MAX_MOVES];
+		int count = a.possibleMoves(movesA);
+		if (b.possibleMoves(movesB) != count)
+			return "different possible move count";
+		for (int i = 0; i < count; i++)
+			if (movesA[i] != movesB[i])
+				return "different possible move " + Move.toString(movesA[i]);
+		// Compare validation of random, mostly invalid, moves.
+		for (int k = 0; k < 16; k++) {
+			int[] m = new int[6];
+			for (int l = 0; l < m.length; l++)
+				m[l] = random.nextInt(a.getRowCount());
+			if (a.validTurn(m[0], m[1], m[2], m[3], m[4], m[5]) != b.validTurn(m[0], m[1], m[2], m[3], m[4], m[5]))
+				return "different validity of " + Arrays.toString(m);
+		}
+		for (int i = 0; i < count; i++) {
+			int m = movesA[i];
+			if (!a.validTurn(Move.rQI(m), Move.cQI(m), Move.rQF(m), Move.cQF(m), Move.rA(m), Move.cA(m))
+					|| !b.validTurn(Move.rQI(m), Move.cQI(m), Move.rQF(m), Move.cQF(m), Move.rA(m), Move.cA(m)))
+				return "generated move " + Move.toString(m) + " not valid";
+			if (!a.move(m) || !b.move(m))
+				return "generated move " + Move.toString(m) + " not performed";
+			if (depth > 1)
+				difference = verify(a, b, depth - 1);
+			else if (a.hash() != b.hash() || a.getTurn() != b.getTurn())
+				difference = "different hash";
+			a.undo(m);
+			b.undo(m);
+			if (difference != null)
+				return Move.toString(m) + " " + difference;
+		}
+		return compare(a, b);
+	}
+
+	/**
+	 * @return Description of how two boards' positions differ, or null if they
+	 *         don't.
+	 */
+	private static String compare(BoardModel a, BoardModel b) {
+		if (!Arrays.deepEquals(a.getState(), b.getState()))
+			return "different state";
+		if (a.getTurn() != b.getTurn())
+			return "different turn";
+		if (a.hash() != b.hash())
+			return "different hash";
+		if (!Arrays.deepEquals(a.getChambers(), b.getChambers()))
+			return "different chambers";
+		if (a.checkFinished() != b.checkFinished())
+			return "different finished state";
+		for (int black = 0; black < 2; black++)
+			if (a.countMoves(black == 0) != b.countMoves(black == 0) || a.hasMoves(black == 0) != b.hasMoves(black == 0))
+				return "different move count";
+		return null;
+	}
+
+	/** Count and cross-check stored positions. */
+	public static void main(String[] args) {
+		int depth = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+		String modelA = args.length > 1 ? args[1] : "array";
+		String modelB = args.length > 2 ? args[2] : "bitboard";
+		Perft perft = new Perft(depth);
+		boolean agree = true;
+		for (int p = 0; p < POSITIONS.length; p++) {
+			byte[][] state = parse(POSITIONS[p]);
+			long[] nodes = new long[2];
+			String[] models = { modelA, modelB };
+			for (int m = 0; m < models.length; m++) {
+				BoardModel board = create(models[m], state, false);
+				// Warm up before timing.
+				perft.perft(board, Math.min(depth, 1));
+				long start = System.nanoTime();
+				nodes[m] = perft.perft(board, depth);
+				double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.printf("%-8s depth %d %-8s %,14d nodes %10.3f s %,14.0f nodes/s%n", NAMES[p], depth,
+						models[m], nodes[m], seconds, nodes[m] / seconds);
+			}
+			String difference = nodes[0] != nodes[1] ? "different node counts"
+					: perft.verify(create(modelA, state, false), create(modelB, state, false), depth);
+			if (difference != null) {
+				agree = false;
+				System.out.println(NAMES[p] + " mismatch: " + difference);
+			}
+		}
+		System.out.println(agree ? "Models agree." : "Models disagree!");
+		if (!agree)
+			System.exit(1);
+	}
+}
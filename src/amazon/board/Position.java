@@ -0,0 +1,46 @@
+package amazon.board;
+
+/**
+ * Read-only view of a board position, for evaluating positions without
+ * copying them. A board is a view of its own current position, reading its
+ * own storage and cached chambers, so it changes as moves are performed.
+ */
+public interface Position {
+
+	/**
+	 * @param r
+	 *            Row of location.
+	 * @param c
+	 *            Column of location.
+	 * @return The value of a given board location.
+	 */
+	int get(int r, int c);
+
+	/** @return The row count of board. */
+	int getRowCount();
+
+	/** @return The column count of board. */
+	int getColumnCount();
+
+	/**
+	 * Get the current player turn.
+	 *
+	 * @return Whether its black player's turn.
+	 */
+	public boolean getTurn();
+
+	/**
+	 * Get one location of the chamber ownership representation described by
+	 * {@link BoardModel#getChambers()}, without writing out the whole array.
+	 *
+	 * @param view
+	 *            0 for chamber labels, 1 for black queen counts, or 2 for
+	 *            white queen counts.
+	 * @param r
+	 *            Row of location.
+	 * @param c
+	 *            Column of location.
+	 * @return Chamber value of a given board location.
+	 */
+	public int getChamber(int view, int r, int c);
+}
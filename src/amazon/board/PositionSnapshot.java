@@ -0,0 +1,93 @@
+package amazon.board;
+
+/**
+ * Position copied from another at one point in time, such as a board before
+ * a move is performed on it. Copies are kept in flat arrays reused by every
+ * later capture of the same board size, so capturing doesn't allocate.
+ */
+public class PositionSnapshot implements Position {
+	// Board dimensions.
+	private int rows;
+	private int columns;
+	// Board value of each location index.
+	private byte[] state = new byte[0];
+	// Chamber value of each location index, for each of the three views.
+	private byte[][] chambers = new byte[3][0];
+	// Black or white turn.
+	private boolean blackTurn;
+
+	/**
+	 * Copy the current position of a given position, such as a board,
+	 * replacing any earlier copy.
+	 *
+	 * @param position
+	 *            Position to copy.
+	 */
+	public void capture(Position position) {
+		rows = position.getRowCount();
+		columns = position.getColumnCount();
+		if (state.length < rows * columns) {
+			state = new byte[rows * columns];
+			for (int v = 0; v < 3; v++)
+				chambers[v] = new byte[rows * columns];
+		}
+		for (int r = 0; r < rows; r++)
+			for (int c = 0; c < columns; c++) {
+				int i = r * columns + c;
+				state[i] = (byte) position.get(r, c);
+				for (int v = 0; v < 3; v++)
+					chambers[v][i] = (byte) position.getChamber(v, r, c);
+			}
+		blackTurn = position.getTurn();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see amazon.board.Position#get(int, int)
+	 */
+	@Override
+	public int get(int r, int c) {
+		return state[r * columns + c];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see amazon.board.Position#getRowCount()
+	 */
+	@Override
+	public int getRowCount() {
+		return rows;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see amazon.board.Position#getColumnCount()
+	 */
+	@Override
+	public int getColumnCount() {
+		return columns;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see amazon.board.Position#getTurn()
+	 */
+	@Override
+	public boolean getTurn() {
+		return blackTurn;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see amazon.board.Position#getChamber(int, int, int)
+	 */
+	@Override
+	public int getChamber(int view, int r, int c) {
+		return chambers[view][r * columns + c];
+	}
+}
@@ -0,0 +1,57 @@
+package amazon.board;
+
+import java.util.Random;
+
+/**
+ * Zobrist hash keys shared by all board models, so that equal positions have
+ * equal hashes regardless of representation. A position's hash is the XOR of
+ * the key of each non-empty location's value, and the turn key if it's black
+ * player's turn.
+ */
+final class Zobrist {
+	// Largest supported location count, matching packed move indices.
+	private static final int SQUARES = 16 * 16;
+	// Key of each board value at each location index, by row times column
+	// count plus column. Empty locations have zero keys.
+	private static final long[][] KEYS = new long[5][SQUARES];
+	/** Key toggled when it's black player's turn. */
+	static final long BLACK_TURN;
+
+	static {
+		// Fixed seed, so hashes are reproducible between runs.
+		Random random = new Random(0x5A6F62726973744CL);
+		for (int v = 1; v < KEYS.length; v++)
+			for (int s = 0; s < SQUARES; s++)
+				KEYS[v][s] = random.nextLong();
+		BLACK_TURN = random.nextLong();
+	}
+
+	private Zobrist() {
+	}
+
+	/**
+	 * @param value
+	 *            Board value, as in {@link BoardModel}.
+	 * @param square
+	 *            Location index.
+	 * @return Key of a board value at a given location.
+	 */
+	static long key(int value, int square) {
+		return KEYS[value][square];
+	}
+
+	/**
+	 * Hash a board from scratch.
+	 * 
+	 * @param board
+	 *            Board to hash.
+	 * @return Position hash.
+	 */
+	static long hash(BoardModel board) {
+		long hash = board.getTurn() ? BLACK_TURN : 0;
+		for (int i = 0; i < board.getRowCount(); i++)
+			for (int j = 0; j < board.getColumnCount(); j++)
+				hash ^= key(board.get(i, j), i * board.getColumnCount() + j);
+		return hash;
+	}
+}